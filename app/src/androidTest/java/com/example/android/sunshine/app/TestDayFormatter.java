@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.test.AndroidTestCase;
+import android.text.format.Time;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+public class TestDayFormatter extends AndroidTestCase {
+
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+    private static final int DAYS = 14;
+    private static final int THREADS = 4;
+
+    /**
+     * The day names as they were built before they were cached, one Time and SimpleDateFormat
+     * at a time.
+     */
+    private String expectedDayName(long dateInMillis) {
+        Time time = new Time();
+        time.setToNow();
+        int julianDay = Time.getJulianDay(dateInMillis, time.gmtoff);
+        int currentJulianDay = Time.getJulianDay(System.currentTimeMillis(), time.gmtoff);
+        if (julianDay == currentJulianDay) {
+            return mContext.getString(R.string.today);
+        } else if (julianDay == currentJulianDay + 1) {
+            return mContext.getString(R.string.tomorrow);
+        }
+        return new SimpleDateFormat("EEEE").format(dateInMillis);
+    }
+
+    private String expectedFriendlyDayString(long dateInMillis, boolean displayLongToday) {
+        Time time = new Time();
+        time.setToNow();
+        int julianDay = Time.getJulianDay(dateInMillis, time.gmtoff);
+        int currentJulianDay = Time.getJulianDay(System.currentTimeMillis(), time.gmtoff);
+        if (displayLongToday && julianDay == currentJulianDay) {
+            return mContext.getString(R.string.format_full_friendly_date,
+                    mContext.getString(R.string.today), expectedMonthDay(dateInMillis));
+        } else if (julianDay < currentJulianDay + 7) {
+            return expectedDayName(dateInMillis);
+        }
+        return new SimpleDateFormat("EEE MMM dd").format(dateInMillis);
+    }
+
+    private static String expectedMonthDay(long dateInMillis) {
+        return new SimpleDateFormat("MMMM dd").format(dateInMillis);
+    }
+
+    private static long day(int i) {
+        return WeatherContract.normalizeDate(System.currentTimeMillis()) + i * DAY_IN_MILLIS;
+    }
+
+    private void assertFormattedLikeBefore() {
+        for (int i = -1; i < DAYS; i++) {
+            long date = day(i);
+            assertEquals(expectedFriendlyDayString(date, true),
+                    Utility.getFriendlyDayString(mContext, date, true));
+            assertEquals(expectedFriendlyDayString(date, false),
+                    Utility.getFriendlyDayString(mContext, date, false));
+            assertEquals(expectedDayName(date), Utility.getDayName(mContext, date));
+            assertEquals(expectedMonthDay(date), Utility.getFormattedMonthDay(mContext, date));
+            assertEquals(mContext.getString(R.string.format_full_friendly_date,
+                            expectedDayName(date), expectedMonthDay(date)),
+                    Utility.getFullFriendlyDayString(mContext, date));
+        }
+    }
+
+    public void testFormatsLikeBefore() {
+        assertFormattedLikeBefore();
+        // and the same again from the memo
+        assertFormattedLikeBefore();
+    }
+
+    public void testRemembersDays() {
+        DayFormatter formatter = DayFormatter.getInstance();
+        long date = day(3);
+        String first = formatter.getFriendlyDayString(mContext, date, false);
+        int hits = formatter.getHitCount();
+        int misses = formatter.getMissCount();
+
+        assertSame(first, formatter.getFriendlyDayString(mContext, date, false));
+        assertEquals(hits + 1, formatter.getHitCount());
+        assertEquals(misses, formatter.getMissCount());
+    }
+
+    public void testLocaleChangeFormatsAgain() {
+        Locale locale = Locale.getDefault();
+        long date = day(DAYS - 1);
+        try {
+            Locale.setDefault(Locale.US);
+            assertEquals(expectedMonthDay(date), Utility.getFormattedMonthDay(mContext, date));
+            Locale.setDefault(Locale.GERMANY);
+            assertEquals(expectedMonthDay(date), Utility.getFormattedMonthDay(mContext, date));
+            assertEquals(expectedFriendlyDayString(date, false),
+                    Utility.getFriendlyDayString(mContext, date, false));
+        } finally {
+            Locale.setDefault(locale);
+        }
+    }
+
+    public void testConcurrentCallers() throws InterruptedException {
+        final List<Throwable> failures = new ArrayList<Throwable>();
+        Thread[] threads = new Thread[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < 50; i++) {
+                            assertFormattedLikeBefore();
+                        }
+                    } catch (Throwable e) {
+                        synchronized (failures) {
+                            failures.add(e);
+                        }
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(failures.toString(), failures.isEmpty());
+    }
+}
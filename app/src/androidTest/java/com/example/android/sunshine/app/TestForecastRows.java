@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.MatrixCursor;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.util.ListUpdateCallback;
+import android.support.v7.widget.RecyclerView;
+import android.test.AndroidTestCase;
+import android.util.Log;
+import android.view.ContextThemeWrapper;
+import android.view.View;
+import android.widget.AbsListView;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+public class TestForecastRows extends AndroidTestCase {
+
+    private static final String LOG_TAG = TestForecastRows.class.getSimpleName();
+
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+    private static final int DAYS = 14;
+    private static final int BINDS = 2000;
+
+    private Context mThemedContext;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        // the list item layouts use theme attributes
+        mThemedContext = new ContextThemeWrapper(mContext, R.style.AppTheme);
+    }
+
+    private static MatrixCursor createForecastCursor() {
+        return createForecastCursor(0, DAYS, -1);
+    }
+
+    /**
+     * @param warmerDay a day that is a degree warmer than usual, or -1
+     */
+    private static MatrixCursor createForecastCursor(int firstDay, int days, int warmerDay) {
+        MatrixCursor cursor = new MatrixCursor(ForecastFragment.FORECAST_COLUMNS);
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        int[] weatherIds = {800, 801, 500, 211, 601, 741, 803};
+        for (int i = firstDay; i < firstDay + days; i++) {
+            double high = 20.0 + i + (i == warmerDay ? 1 : 0);
+            cursor.addRow(new Object[] {i + 1, today + i * DAY_IN_MILLIS, "Clear", high, 10.0 - i,
+                    "94043", weatherIds[i % weatherIds.length], "37.42", "-122.08"});
+        }
+        return cursor;
+    }
+
+    public void testRowsMatchCursor() {
+        MatrixCursor cursor = createForecastCursor();
+        ForecastRows rows = ForecastRows.fromCursor(mContext, cursor);
+        assertEquals(DAYS, rows.size());
+        assertEquals("37.42", rows.getCoordLat());
+        assertEquals("-122.08", rows.getCoordLong());
+
+        for (int i = 0; i < DAYS; i++) {
+            cursor.moveToPosition(i);
+            ForecastRow row = rows.get(i);
+            long date = cursor.getLong(ForecastFragment.COL_WEATHER_DATE);
+            int weatherId = cursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
+            assertEquals(date, row.getDate());
+            assertEquals(i, rows.indexOfDate(date));
+            assertEquals(Utility.getFriendlyDayString(mContext, date, false), row.getDayText());
+            assertEquals(Utility.getFriendlyDayString(mContext, date, i == 0), row.getLongDayText());
+            assertEquals(Utility.getIconResourceForWeatherCondition(weatherId), row.getIconResource());
+            assertEquals(Utility.getArtResourceForWeatherCondition(weatherId), row.getArtResource());
+            assertEquals(Utility.getStringForWeatherCondition(mContext, weatherId), row.getDescription());
+            assertEquals(Utility.formatTemperature(mContext,
+                    cursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP)), row.getHigh());
+            assertEquals(Utility.formatTemperature(mContext,
+                    cursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP)), row.getLow());
+            assertEquals(mContext.getString(R.string.a11y_low_temp, row.getLow()), row.getLowA11y());
+        }
+        assertEquals(-1, rows.indexOfDate(0));
+        assertEquals(0, ForecastRows.fromCursor(mContext,
+                new MatrixCursor(ForecastFragment.FORECAST_COLUMNS)).size());
+    }
+
+    public void testDiffOnlyTouchesChangedRows() {
+        ForecastRows previous = ForecastRows.fromCursor(mContext, createForecastCursor(0, 7, -1));
+        // the same days, loaded again
+        ForecastRows same = ForecastRows.diff(previous,
+                ForecastRows.fromCursor(mContext, createForecastCursor(0, 7, -1)));
+        assertEquals("", recordUpdates(same.getDiffFrom(previous)));
+        assertNull("Error: the diff only applies to the rows it was made from",
+                same.getDiffFrom(same));
+
+        // the same days, but the third is warmer
+        ForecastRows warmer = ForecastRows.diff(previous,
+                ForecastRows.fromCursor(mContext, createForecastCursor(0, 7, 2)));
+        assertEquals("change 2 1;", recordUpdates(warmer.getDiffFrom(previous)));
+
+        // a day later, the first day is gone and a new one comes in at the end
+        ForecastRows nextDay = ForecastRows.diff(previous,
+                ForecastRows.fromCursor(mContext, createForecastCursor(1, 7, -1)));
+        String updates = recordUpdates(nextDay.getDiffFrom(previous));
+        assertTrue(updates, updates.contains("remove 0 1;"));
+        assertTrue(updates, updates.contains("insert "));
+        assertFalse("Error: rows were moved, " + updates, updates.contains("move"));
+    }
+
+    private static String recordUpdates(DiffUtil.DiffResult diff) {
+        final StringBuilder updates = new StringBuilder();
+        diff.dispatchUpdatesTo(new ListUpdateCallback() {
+            @Override
+            public void onInserted(int position, int count) {
+                updates.append("insert ").append(position).append(' ').append(count).append(';');
+            }
+
+            @Override
+            public void onRemoved(int position, int count) {
+                updates.append("remove ").append(position).append(' ').append(count).append(';');
+            }
+
+            @Override
+            public void onMoved(int fromPosition, int toPosition) {
+                updates.append("move ").append(fromPosition).append(' ').append(toPosition)
+                        .append(';');
+            }
+
+            @Override
+            public void onChanged(int position, int count, Object payload) {
+                updates.append("change ").append(position).append(' ').append(count).append(';');
+            }
+        });
+        return updates.toString();
+    }
+
+    /**
+     * Compares the cost of binding a row, formatting everything from the cursor as the adapter
+     * used to, and assigning the precomputed fields as it does now.
+     */
+    public void testBindBenchmark() {
+        MatrixCursor cursor = createForecastCursor();
+        ForecastAdapter adapter = new ForecastAdapter(mThemedContext,
+                new ForecastAdapter.ForecastAdapterOnClickHandler() {
+                    @Override
+                    public void onClick(Long date, ForecastAdapter.ForecastAdapterViewHolder vh) {
+                    }
+                }, new View(mThemedContext), AbsListView.CHOICE_MODE_NONE);
+        adapter.setUseTodayLayout(false);
+        RecyclerView parent = new RecyclerView(mThemedContext);
+        ForecastAdapter.ForecastAdapterViewHolder holder = adapter.onCreateViewHolder(parent, 1);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < BINDS; i++) {
+            bindFromCursor(cursor, i % DAYS, holder);
+        }
+        long cursorNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        adapter.swapRows(ForecastRows.fromCursor(mContext, cursor));
+        long buildNanos = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int i = 0; i < BINDS; i++) {
+            adapter.onBindViewHolder(holder, i % DAYS);
+        }
+        long rowNanos = System.nanoTime() - start;
+
+        Log.i(LOG_TAG, String.format("per bind: %d us formatting from the cursor, %d us from "
+                        + "precomputed rows (built once for %d rows in %d us)",
+                cursorNanos / BINDS / 1000, rowNanos / BINDS / 1000, DAYS, buildNanos / 1000));
+    }
+
+    /**
+     * What onBindViewHolder did for a day other than today before the rows were precomputed.
+     */
+    private void bindFromCursor(MatrixCursor cursor, int position,
+                                ForecastAdapter.ForecastAdapterViewHolder holder) {
+        cursor.moveToPosition(position);
+        int weatherId = cursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
+        int defaultImage = Utility.getIconResourceForWeatherCondition(weatherId);
+        if (Utility.usingLocalGraphics(mContext)) {
+            holder.mIconView.setImageResource(defaultImage);
+        }
+        long dateInMillis = cursor.getLong(ForecastFragment.COL_WEATHER_DATE);
+        holder.mDateView.setText(Utility.getFriendlyDayString(mContext, dateInMillis, false));
+        String description = Utility.getStringForWeatherCondition(mContext, weatherId);
+        holder.mDescriptionView.setText(description);
+        holder.mDescriptionView.setContentDescription(
+                mContext.getString(R.string.a11y_forecast, description));
+        String highString = Utility.formatTemperature(mContext,
+                cursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP));
+        holder.mHighTempView.setText(highString);
+        holder.mHighTempView.setContentDescription(
+                mContext.getString(R.string.a11y_high_temp, highString));
+        String lowString = Utility.formatTemperature(mContext,
+                cursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP));
+        holder.mLowTempView.setText(lowString);
+        holder.mLowTempView.setContentDescription(
+                mContext.getString(R.string.a11y_low_temp, lowString));
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class TestSettingsSnapshot extends AndroidTestCase {
+
+    private static final String LOG_TAG = TestSettingsSnapshot.class.getSimpleName();
+
+    private static final int FORMATS = 20000;
+
+    private SharedPreferences mPrefs;
+    private String mUnits;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        mUnits = mPrefs.getString(mContext.getString(R.string.pref_units_key),
+                mContext.getString(R.string.pref_units_metric));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        putOnMainThread(R.string.pref_units_key, mUnits);
+        super.tearDown();
+    }
+
+    /**
+     * Writes a setting the way the settings screen does, on the main thread.
+     */
+    private void putOnMainThread(final int keyId, final String value) throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(1);
+        new Handler(Looper.getMainLooper()).post(new Runnable() {
+            @Override
+            public void run() {
+                mPrefs.edit().putString(mContext.getString(keyId), value).commit();
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * isMetric as it was before the snapshot, reading the preferences every time.
+     */
+    private boolean isMetricFromPreferences() {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        return prefs.getString(mContext.getString(R.string.pref_units_key),
+                mContext.getString(R.string.pref_units_metric))
+                .equals(mContext.getString(R.string.pref_units_metric));
+    }
+
+    public void testMatchesPreferences() {
+        SettingsSnapshot snapshot = SettingsSnapshot.get(mContext);
+        assertEquals(isMetricFromPreferences(), snapshot.isMetric());
+        assertEquals(mPrefs.getString(mContext.getString(R.string.pref_location_key),
+                mContext.getString(R.string.pref_location_default)), snapshot.getLocation());
+        String sunshineArtPack = mContext.getString(R.string.pref_art_pack_sunshine);
+        String artPack = mPrefs.getString(mContext.getString(R.string.pref_art_pack_key),
+                sunshineArtPack);
+        assertEquals(artPack, snapshot.getArtPack());
+        assertEquals(artPack.equals(sunshineArtPack), snapshot.isUsingLocalGraphics());
+    }
+
+    public void testSwappedOnChange() throws InterruptedException {
+        // start listening, and from metric, so that the change below is a change
+        SettingsSnapshot.get(mContext);
+        putOnMainThread(R.string.pref_units_key, mContext.getString(R.string.pref_units_metric));
+        SettingsSnapshot before = SettingsSnapshot.get(mContext);
+        assertTrue(before.isMetric());
+
+        putOnMainThread(R.string.pref_units_key, mContext.getString(R.string.pref_units_imperial));
+        SettingsSnapshot imperial = SettingsSnapshot.get(mContext);
+        assertNotSame(before, imperial);
+        assertFalse(imperial.isMetric());
+        assertFalse(Utility.isMetric(mContext));
+        assertEquals(before.getLocation(), imperial.getLocation());
+
+        putOnMainThread(R.string.pref_units_key, mContext.getString(R.string.pref_units_metric));
+        assertTrue(Utility.isMetric(mContext));
+        // the snapshot that was handed out doesn't change
+        assertFalse(imperial.isMetric());
+    }
+
+    /**
+     * Compares formatTemperature reading the units from the preferences every time, like it did,
+     * with reading them from the snapshot.
+     */
+    public void testFormatTemperatureBenchmark() {
+        // warm up both, so neither pays for loading the preferences or the resources
+        Utility.formatTemperature(mContext, 21.5, isMetricFromPreferences());
+        Utility.formatTemperature(mContext, 21.5);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < FORMATS; i++) {
+            Utility.formatTemperature(mContext, i % 40, isMetricFromPreferences());
+        }
+        long preferencesNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < FORMATS; i++) {
+            Utility.formatTemperature(mContext, i % 40);
+        }
+        long snapshotNanos = System.nanoTime() - start;
+
+        Log.i(LOG_TAG, String.format("formatTemperature: %d per second reading the preferences, "
+                        + "%d per second from the snapshot",
+                FORMATS * 1000000000L / preferencesNanos, FORMATS * 1000000000L / snapshotNanos));
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.annotation.TargetApi;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Build;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+    Stress test for readers running while the sync writes: N reader threads query the forecast
+    join while a writer keeps bulk inserting.  Logs the p50/p99 query latency with the default
+    rollback journal and with write-ahead logging.
+ */
+public class TestConcurrentReads extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestConcurrentReads.class.getSimpleName();
+
+    private static final int READER_THREADS = 4;
+    private static final int QUERIES_PER_READER = 200;
+    private static final int ROWS_PER_WRITE = 1000;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        super.tearDown();
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    public void testReadLatencyUnderWrites() throws Throwable {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            // can't switch the journal mode of a helper before Jelly Bean
+            return;
+        }
+        runStress(false);
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        runStress(true);
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private void runStress(boolean writeAheadLogging) throws Throwable {
+        final WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        dbHelper.setWriteAheadLoggingEnabled(writeAheadLogging);
+        final SQLiteDatabase db = dbHelper.getWritableDatabase();
+
+        ContentValues locationValues = TestUtilities.createNorthPoleLocationValues();
+        final long locationRowId = db.insert(LocationEntry.TABLE_NAME, null, locationValues);
+        assertTrue(locationRowId != -1);
+
+        final AtomicBoolean done = new AtomicBoolean();
+        final AtomicBoolean reading = new AtomicBoolean();
+        final AtomicInteger writesWhileReading = new AtomicInteger();
+        final Throwable[] failure = new Throwable[1];
+
+        // The writer runs the provider's bulk insert, over and over.  It's called on the
+        // database directly, since the provider's own helper can't be switched to the rollback
+        // journal for the "before" numbers.
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    ContentValues[] values = TestBulkInsertBenchmark.createWeatherValues(
+                            locationRowId, ROWS_PER_WRITE);
+                    while (!done.get()) {
+                        WeatherProvider.insertWeatherRows(db, values);
+                        if (reading.get()) {
+                            writesWhileReading.incrementAndGet();
+                        }
+                    }
+                } catch (Throwable t) {
+                    failure[0] = t;
+                }
+            }
+        });
+
+        final long[][] latencies = new long[READER_THREADS][QUERIES_PER_READER];
+        final CountDownLatch readersDone = new CountDownLatch(READER_THREADS);
+        ArrayList<Thread> readers = new ArrayList<Thread>();
+        for (int r = 0; r < READER_THREADS; r++) {
+            final long[] readerLatencies = latencies[r];
+            readers.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < QUERIES_PER_READER; i++) {
+                            long start = System.nanoTime();
+                            Cursor cursor = WeatherProvider.sWeatherByLocationSettingQueryBuilder
+                                    .query(db, null, WeatherProvider.sLocationSettingSelection,
+                                            new String[]{TestUtilities.TEST_LOCATION},
+                                            null, null, WeatherEntry.COLUMN_DATE + " ASC");
+                            cursor.getCount();
+                            cursor.close();
+                            readerLatencies[i] = System.nanoTime() - start;
+                        }
+                    } catch (Throwable t) {
+                        failure[0] = t;
+                    } finally {
+                        readersDone.countDown();
+                    }
+                }
+            }));
+        }
+
+        writer.start();
+        reading.set(true);
+        for (Thread reader : readers) {
+            reader.start();
+        }
+        readersDone.await();
+        reading.set(false);
+        done.set(true);
+        writer.join();
+        dbHelper.close();
+
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        // without writes the latencies would be the uncontended ones
+        assertTrue("Error: the writer committed nothing while the readers ran",
+                writesWhileReading.get() > 0);
+
+        long[] all = new long[READER_THREADS * QUERIES_PER_READER];
+        for (int r = 0; r < READER_THREADS; r++) {
+            System.arraycopy(latencies[r], 0, all, r * QUERIES_PER_READER, QUERIES_PER_READER);
+        }
+        Arrays.sort(all);
+        Log.i(LOG_TAG, String.format("%s: %d readers, p50 %d us, p99 %d us",
+                writeAheadLogging ? "WAL" : "rollback journal", READER_THREADS,
+                all[all.length / 2] / 1000, all[all.length * 99 / 100] / 1000));
+    }
+}
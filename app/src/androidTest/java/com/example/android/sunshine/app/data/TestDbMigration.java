@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.HashSet;
+
+/*
+    Walks every historical database version forward to the current one, and checks that the
+    data survives and the schema ends up the same as a freshly created database.
+ */
+public class TestDbMigration extends AndroidTestCase {
+
+    // The schema as it was at WeatherDbHelper.OLDEST_MIGRATABLE_VERSION.  Every later version
+    // is built from this by applying the migration steps.
+    private static final String V2_CREATE_LOCATION_TABLE = "CREATE TABLE location (" +
+            "_id INTEGER PRIMARY KEY," +
+            "location_setting TEXT UNIQUE NOT NULL, " +
+            "city_name TEXT NOT NULL, " +
+            "coord_lat REAL NOT NULL, " +
+            "coord_long REAL NOT NULL );";
+    private static final String V2_CREATE_WEATHER_TABLE = "CREATE TABLE weather (" +
+            "_id INTEGER PRIMARY KEY AUTOINCREMENT," +
+            "location_id INTEGER NOT NULL, " +
+            "date INTEGER NOT NULL, " +
+            "short_desc TEXT NOT NULL, " +
+            "weather_id INTEGER NOT NULL," +
+            "min REAL NOT NULL, " +
+            "max REAL NOT NULL, " +
+            "humidity REAL NOT NULL, " +
+            "pressure REAL NOT NULL, " +
+            "wind REAL NOT NULL, " +
+            "degrees REAL NOT NULL, " +
+            " FOREIGN KEY (location_id) REFERENCES location (_id), " +
+            " UNIQUE (date, location_id) ON CONFLICT REPLACE);";
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        super.tearDown();
+    }
+
+    public void testUpgradeFromEveryVersion() {
+        for (int version = WeatherDbHelper.OLDEST_MIGRATABLE_VERSION;
+             version < WeatherDbHelper.DATABASE_VERSION; version++) {
+            mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+            ContentValues[] stored = createDatabaseAtVersion(version);
+
+            WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+            SQLiteDatabase db = dbHelper.getWritableDatabase();
+            assertEquals(WeatherDbHelper.DATABASE_VERSION, db.getVersion());
+
+            Cursor cursor = db.query(LocationEntry.TABLE_NAME, null, null, null, null, null, null);
+            TestUtilities.validateCursor("Error: location lost upgrading from version " + version,
+                    cursor, stored[0]);
+            cursor = db.query(WeatherEntry.TABLE_NAME, null, null, null, null, null, null);
+            TestUtilities.validateCursor("Error: weather lost upgrading from version " + version,
+                    cursor, stored[1]);
+
+            assertSameSchemaAsFreshDatabase(db, version);
+            dbHelper.close();
+        }
+    }
+
+    /*
+        Creates the database as it looked at the given version, with a location and a day of
+        weather in it.  Returns those two rows.
+     */
+    private ContentValues[] createDatabaseAtVersion(int version) {
+        SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(
+                mContext.getDatabasePath(WeatherDbHelper.DATABASE_NAME), null);
+        db.execSQL(V2_CREATE_LOCATION_TABLE);
+        db.execSQL(V2_CREATE_WEATHER_TABLE);
+        WeatherDbHelper.migrate(db, WeatherDbHelper.OLDEST_MIGRATABLE_VERSION, version);
+
+        ContentValues locationValues = TestUtilities.createNorthPoleLocationValues();
+        long locationRowId = db.insert(LocationEntry.TABLE_NAME, null, locationValues);
+        assertTrue(locationRowId != -1);
+        ContentValues weatherValues = TestUtilities.createWeatherValues(locationRowId);
+        assertTrue(db.insert(WeatherEntry.TABLE_NAME, null, weatherValues) != -1);
+
+        db.setVersion(version);
+        db.close();
+        return new ContentValues[]{locationValues, weatherValues};
+    }
+
+    private void assertSameSchemaAsFreshDatabase(SQLiteDatabase upgraded, int fromVersion) {
+        SQLiteDatabase fresh = SQLiteDatabase.create(null);
+        new WeatherDbHelper(mContext).onCreate(fresh);
+        for (String table : new String[]{LocationEntry.TABLE_NAME, WeatherEntry.TABLE_NAME}) {
+            assertEquals("Error: columns of " + table + " differ after upgrading from version " +
+                            fromVersion,
+                    getNames(fresh, "PRAGMA table_info(" + table + ")"),
+                    getNames(upgraded, "PRAGMA table_info(" + table + ")"));
+            assertEquals("Error: indexes of " + table + " differ after upgrading from version " +
+                            fromVersion,
+                    getNames(fresh, "PRAGMA index_list(" + table + ")"),
+                    getNames(upgraded, "PRAGMA index_list(" + table + ")"));
+        }
+        fresh.close();
+    }
+
+    private static HashSet<String> getNames(SQLiteDatabase db, String pragma) {
+        HashSet<String> names = new HashSet<String>();
+        Cursor c = db.rawQuery(pragma, null);
+        int nameIndex = c.getColumnIndex("name");
+        while (c.moveToNext()) {
+            names.add(c.getString(nameIndex));
+        }
+        c.close();
+        return names;
+    }
+}
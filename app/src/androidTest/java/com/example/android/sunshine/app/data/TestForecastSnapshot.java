@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+public class TestForecastSnapshot extends AndroidTestCase {
+
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAllRecords();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteAllRecords();
+        super.tearDown();
+    }
+
+    private void deleteAllRecords() {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+    }
+
+    private long insertLocation() {
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI,
+                TestUtilities.createNorthPoleLocationValues());
+        return ContentUris.parseId(locationUri);
+    }
+
+    public void testSnapshotMatchesProvider() {
+        long locationRowId = insertLocation();
+        ContentValues[] values = TestBulkInsertBenchmark.createWeatherValues(locationRowId, 3);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, values);
+
+        ForecastSnapshot snapshot = ForecastSnapshot.get(mContext, TestUtilities.TEST_LOCATION);
+        assertEquals(TestUtilities.TEST_LOCATION, snapshot.getLocationSetting());
+        assertEquals(values.length, snapshot.getDayCount());
+        for (int i = 0; i < values.length; i++) {
+            assertEquals(values[i].getAsLong(WeatherEntry.COLUMN_DATE).longValue(),
+                    snapshot.getDate(i));
+            assertEquals(values[i].getAsInteger(WeatherEntry.COLUMN_WEATHER_ID).intValue(),
+                    snapshot.getWeatherId(i));
+            assertEquals(values[i].getAsDouble(WeatherEntry.COLUMN_MAX_TEMP),
+                    snapshot.getHigh(i), 0);
+            assertEquals(values[i].getAsDouble(WeatherEntry.COLUMN_MIN_TEMP),
+                    snapshot.getLow(i), 0);
+            assertEquals(values[i].getAsString(WeatherEntry.COLUMN_SHORT_DESC),
+                    snapshot.getDescription(i));
+        }
+
+        long firstDate = snapshot.getDate(0);
+        assertEquals(0, snapshot.indexOfDate(firstDate + 1000));
+        assertEquals(1, snapshot.indexOfDate(firstDate + DAY_IN_MILLIS));
+        assertEquals(-1, snapshot.indexOfDate(firstDate - DAY_IN_MILLIS));
+        assertEquals(0, snapshot.indexOfFirstDateFrom(firstDate - DAY_IN_MILLIS));
+        assertEquals(-1, snapshot.indexOfFirstDateFrom(firstDate + 3 * DAY_IN_MILLIS));
+    }
+
+    public void testProviderWritesInvalidate() {
+        long locationRowId = insertLocation();
+        ForecastSnapshot empty = ForecastSnapshot.get(mContext, TestUtilities.TEST_LOCATION);
+        assertEquals(0, empty.getDayCount());
+
+        long hits = ForecastSnapshot.getHitCount();
+        assertSame(empty, ForecastSnapshot.get(mContext, TestUtilities.TEST_LOCATION));
+        assertEquals(hits + 1, ForecastSnapshot.getHitCount());
+
+        mContext.getContentResolver().insert(WeatherEntry.CONTENT_URI,
+                TestUtilities.createWeatherValues(locationRowId));
+        long misses = ForecastSnapshot.getMissCount();
+        ForecastSnapshot updated = ForecastSnapshot.get(mContext, TestUtilities.TEST_LOCATION);
+        assertEquals(misses + 1, ForecastSnapshot.getMissCount());
+        assertEquals(1, updated.getDayCount());
+
+        // a rebuild is served to the next reader without another load
+        ForecastSnapshot rebuilt = ForecastSnapshot.rebuild(mContext, TestUtilities.TEST_LOCATION);
+        misses = ForecastSnapshot.getMissCount();
+        assertSame(rebuilt, ForecastSnapshot.get(mContext, TestUtilities.TEST_LOCATION));
+        assertEquals(misses, ForecastSnapshot.getMissCount());
+    }
+}
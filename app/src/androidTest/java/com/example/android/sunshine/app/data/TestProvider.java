@@ -512,4 +512,47 @@ public class TestProvider extends AndroidTestCase {
         }
         cursor.close();
     }
+
+    /*
+        This test checks that a merge bulk insert only writes the rows that actually changed,
+        and reports how many it wrote.
+     */
+    public void testMergeBulkInsert() {
+        ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, testValues);
+        long locationRowId = ContentUris.parseId(locationUri);
+
+        ContentValues[] bulkInsertContentValues = createBulkInsertWeatherValues(locationRowId);
+        Uri mergeUri = WeatherEntry.buildWeatherMergeUri();
+
+        // Nothing stored yet, so every row is new
+        int changedCount = mContext.getContentResolver().bulkInsert(mergeUri, bulkInsertContentValues);
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, changedCount);
+
+        // Merging the very same rows again shouldn't write anything
+        changedCount = mContext.getContentResolver().bulkInsert(mergeUri,
+                createBulkInsertWeatherValues(locationRowId));
+        assertEquals("Error: Unchanged rows were written by a merge", 0, changedCount);
+
+        // Change a single day, and only that day should be written
+        ContentValues[] updatedValues = createBulkInsertWeatherValues(locationRowId);
+        updatedValues[3].put(WeatherEntry.COLUMN_MAX_TEMP, 99.5);
+        changedCount = mContext.getContentResolver().bulkInsert(mergeUri, updatedValues);
+        assertEquals("Error: A merge should only write the changed row", 1, changedCount);
+
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherEntry.CONTENT_URI,
+                null,
+                null,
+                null,
+                WeatherEntry.COLUMN_DATE + " ASC"
+        );
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, cursor.getCount());
+        cursor.moveToFirst();
+        for ( int i = 0; i < BULK_INSERT_RECORDS_TO_INSERT; i++, cursor.moveToNext() ) {
+            TestUtilities.validateCurrentRecord("testMergeBulkInsert.  Error validating WeatherEntry " + i,
+                    cursor, updatedValues[i]);
+        }
+        cursor.close();
+    }
 }
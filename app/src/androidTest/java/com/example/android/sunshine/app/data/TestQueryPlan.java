@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/*
+    Runs EXPLAIN QUERY PLAN for the query behind every URI WeatherProvider matches, and fails
+    when one of them falls back to scanning a whole table.  The plans are checked against
+    tables of increasing size, analyzed so the planner sees realistic statistics.
+ */
+public class TestQueryPlan extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestQueryPlan.class.getSimpleName();
+
+    private static final int LOCATION_COUNT = 100;
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+    private static final String SORT_ORDER = WeatherEntry.COLUMN_DATE + " ASC";
+
+    private WeatherDbHelper mDbHelper;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        mDbHelper = new WeatherDbHelper(mContext);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mDbHelper.close();
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        super.tearDown();
+    }
+
+    public void testQueryPlansEmpty() {
+        checkQueryPlans(0);
+    }
+
+    public void testQueryPlans1k() {
+        checkQueryPlans(1000);
+    }
+
+    public void testQueryPlans100k() {
+        checkQueryPlans(100000);
+    }
+
+    public void testQueryPlans1M() {
+        checkQueryPlans(1000000);
+    }
+
+    private void checkQueryPlans(int weatherRows) {
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        populate(db, weatherRows);
+
+        String locationArg = "location-7";
+        String dateArg = Long.toString(WeatherContract.normalizeDate(TestUtilities.TEST_DATE));
+
+        // WeatherProvider.WEATHER_WITH_LOCATION, without and with a start date
+        assertNoTableScan(db, weatherRows, "weather/*",
+                WeatherProvider.sWeatherByLocationSettingQueryBuilder.buildQuery(null,
+                        WeatherProvider.sLocationSettingSelection, null, null, SORT_ORDER, null),
+                new String[]{locationArg});
+        assertNoTableScan(db, weatherRows, "weather/*?date=",
+                WeatherProvider.sWeatherByLocationSettingQueryBuilder.buildQuery(null,
+                        WeatherProvider.sLocationSettingWithStartDateSelection, null, null,
+                        SORT_ORDER, null),
+                new String[]{locationArg, dateArg});
+
+        // WeatherProvider.WEATHER_WITH_LOCATION_AND_DATE
+        assertNoTableScan(db, weatherRows, "weather/*/#",
+                WeatherProvider.sWeatherByLocationSettingQueryBuilder.buildQuery(null,
+                        WeatherProvider.sLocationSettingAndDaySelection, null, null, null, null),
+                new String[]{locationArg, dateArg});
+
+        // WeatherProvider.WEATHER, with the selections the app actually uses on it: the
+        // cleanup of old days and the merge lookup of a single day.
+        assertNoTableScan(db, weatherRows, "weather (old days)",
+                "SELECT " + WeatherEntry._ID + " FROM " + WeatherEntry.TABLE_NAME +
+                        " WHERE " + WeatherEntry.COLUMN_DATE + " <= ?",
+                new String[]{dateArg});
+        assertNoTableScan(db, weatherRows, "weather (merge)",
+                "SELECT * FROM " + WeatherEntry.TABLE_NAME + " WHERE " +
+                        WeatherEntry.COLUMN_LOC_KEY + " = ? AND " + WeatherEntry.COLUMN_DATE + " = ?",
+                new String[]{"7", dateArg});
+
+        // WeatherProvider.LOCATION, looked up by its setting
+        assertNoTableScan(db, weatherRows, "location",
+                "SELECT " + LocationEntry._ID + " FROM " + LocationEntry.TABLE_NAME + " WHERE " +
+                        LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                new String[]{locationArg});
+    }
+
+    private void assertNoTableScan(SQLiteDatabase db, int weatherRows, String uri, String sql,
+                                   String[] args) {
+        Cursor plan = db.rawQuery("EXPLAIN QUERY PLAN " + sql, args);
+        try {
+            int detailIndex = plan.getColumnIndex("detail");
+            assertTrue("Error: no query plan for " + uri, plan.moveToFirst());
+            do {
+                String detail = plan.getString(detailIndex);
+                Log.d(LOG_TAG, weatherRows + " rows, " + uri + ": " + detail);
+                assertFalse("Error: " + uri + " scans a whole table with " + weatherRows +
+                                " rows: " + detail,
+                        detail.startsWith("SCAN") && !detail.contains(" USING "));
+            } while (plan.moveToNext());
+        } finally {
+            plan.close();
+        }
+    }
+
+    private static void populate(SQLiteDatabase db, int weatherRows) {
+        db.beginTransaction();
+        try {
+            SQLiteStatement insertLocation = db.compileStatement("INSERT INTO " +
+                    LocationEntry.TABLE_NAME + " (" + LocationEntry._ID + ", " +
+                    LocationEntry.COLUMN_LOCATION_SETTING + ", " + LocationEntry.COLUMN_CITY_NAME +
+                    ", " + LocationEntry.COLUMN_COORD_LAT + ", " + LocationEntry.COLUMN_COORD_LONG +
+                    ") VALUES (?, ?, 'City', 0, 0)");
+            for (int i = 1; i <= LOCATION_COUNT; i++) {
+                insertLocation.bindLong(1, i);
+                insertLocation.bindString(2, "location-" + i);
+                insertLocation.executeInsert();
+            }
+            insertLocation.close();
+
+            SQLiteStatement insertWeather = db.compileStatement("INSERT INTO " +
+                    WeatherEntry.TABLE_NAME + " (" + WeatherEntry.COLUMN_LOC_KEY + ", " +
+                    WeatherEntry.COLUMN_DATE + ", " + WeatherEntry.COLUMN_SHORT_DESC + ", " +
+                    WeatherEntry.COLUMN_WEATHER_ID + ", " + WeatherEntry.COLUMN_MIN_TEMP + ", " +
+                    WeatherEntry.COLUMN_MAX_TEMP + ", " + WeatherEntry.COLUMN_HUMIDITY + ", " +
+                    WeatherEntry.COLUMN_PRESSURE + ", " + WeatherEntry.COLUMN_WIND_SPEED + ", " +
+                    WeatherEntry.COLUMN_DEGREES +
+                    ") VALUES (?, ?, 'Asteroids', 321, 65, 75, 1.2, 1.3, 5.5, 1.1)");
+            long firstDate = WeatherContract.normalizeDate(TestUtilities.TEST_DATE);
+            for (int i = 0; i < weatherRows; i++) {
+                insertWeather.bindLong(1, i % LOCATION_COUNT + 1);
+                insertWeather.bindLong(2, firstDate + (i / LOCATION_COUNT) * DAY_IN_MILLIS);
+                insertWeather.executeInsert();
+            }
+            insertWeather.close();
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        db.execSQL("ANALYZE");
+    }
+}
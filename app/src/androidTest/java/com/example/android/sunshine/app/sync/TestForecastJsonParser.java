@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.ContentValues;
+import android.os.Debug;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import org.json.JSONException;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.net.HttpURLConnection;
+
+/*
+    Checks that the streaming forecast parser produces exactly the rows the org.json parser
+    does, and logs how the two compare on time and allocations for the payload sizes we request.
+ */
+public class TestForecastJsonParser extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestForecastJsonParser.class.getSimpleName();
+
+    private static final int JULIAN_START_DAY = 2457012;  // December 20th, 2014
+    private static final int BENCHMARK_ITERATIONS = 50;
+
+    static String createForecastJson(int days) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\"city\":{\"id\":5375480,\"name\":\"Mountain View\",")
+                .append("\"coord\":{\"lon\":-122.083847,\"lat\":37.386051},")
+                .append("\"country\":\"US\",\"population\":0},")
+                .append("\"cod\":\"200\",\"message\":0.0138,\"cnt\":").append(days)
+                .append(",\"list\":[");
+        for (int i = 0; i < days; i++) {
+            if (i > 0) json.append(',');
+            json.append("{\"dt\":").append(1419019200 + i * 86400)
+                    .append(",\"temp\":{\"day\":12.5,\"min\":").append(5 + i * 0.25)
+                    .append(",\"max\":").append(15 + i * 0.5)
+                    .append(",\"night\":6.1,\"eve\":10.2,\"morn\":5.5},")
+                    .append("\"pressure\":").append(1010.5 + i)
+                    .append(",\"humidity\":").append(50 + i)
+                    .append(",\"weather\":[{\"id\":").append(800 + (i % 5))
+                    .append(",\"main\":\"Clear\",\"description\":\"sky is clear\",\"icon\":\"01d\"}]")
+                    .append(",\"speed\":").append(1.5 + i * 0.1)
+                    .append(",\"deg\":").append(i * 10)
+                    .append(",\"clouds\":0}");
+        }
+        json.append("]}");
+        return json.toString();
+    }
+
+    public void testStreamMatchesTree() throws Throwable {
+        String json = createForecastJson(14);
+
+        ForecastJsonParser.Forecast streamed =
+                new ForecastJsonParser(JULIAN_START_DAY).parseStream(new StringReader(json));
+        ForecastJsonParser.Forecast tree = new ForecastJsonParser(JULIAN_START_DAY).parseTree(json);
+
+        assertEquals(HttpURLConnection.HTTP_OK, streamed.code);
+        assertEquals(tree.cityName, streamed.cityName);
+        assertEquals(tree.cityLatitude, streamed.cityLatitude);
+        assertEquals(tree.cityLongitude, streamed.cityLongitude);
+        assertEquals(14, streamed.days.size());
+        assertEquals(tree.days.size(), streamed.days.size());
+        for (int i = 0; i < tree.days.size(); i++) {
+            ContentValues expected = tree.days.get(i);
+            ContentValues actual = streamed.days.get(i);
+            assertEquals("Error: day " + i + " differs between parsers", expected, actual);
+        }
+        assertTrue(streamed.days.get(1).getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE) >
+                streamed.days.get(0).getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE));
+    }
+
+    public void testErrorCode() throws Throwable {
+        String json = "{\"cod\":\"404\",\"message\":\"Error: Not found city\"}";
+        ForecastJsonParser.Forecast streamed =
+                new ForecastJsonParser(JULIAN_START_DAY).parseStream(new StringReader(json));
+        assertEquals(HttpURLConnection.HTTP_NOT_FOUND, streamed.code);
+        assertEquals(0, streamed.days.size());
+    }
+
+    public void testMalformedPayload() throws Throwable {
+        String json = "{\"cod\":\"200\",\"list\":[{\"temp\":{\"min\":\"cold\"}}]}";
+        try {
+            new ForecastJsonParser(JULIAN_START_DAY).parseStream(new StringReader(json));
+            fail("Error: malformed forecast should not parse");
+        } catch (JSONException expected) {
+            // that's what we wanted
+        }
+    }
+
+    public void testMissingList() throws Throwable {
+        String[] jsons = {
+                "{\"cod\":\"200\",\"city\":{\"name\":\"Mountain View\","
+                        + "\"coord\":{\"lon\":-122.08,\"lat\":37.39}}}",
+                "{\"cod\":\"200\",\"city\":{\"name\":\"Mountain View\","
+                        + "\"coord\":{\"lon\":-122.08,\"lat\":37.39}},\"list\":{}}"};
+        for (String json : jsons) {
+            try {
+                new ForecastJsonParser(JULIAN_START_DAY).parseStream(new StringReader(json));
+                fail("Error: a forecast without a list should not parse: " + json);
+            } catch (JSONException expected) {
+                // that's what we wanted
+            }
+        }
+    }
+
+    public void testTruncatedPayload() throws Throwable {
+        String json = createForecastJson(14);
+        String[] broken = {json.substring(0, json.length() / 2), "{\"cod\":\"200\",\"list\":[}"};
+        for (String body : broken) {
+            try {
+                new ForecastJsonParser(JULIAN_START_DAY).parseStream(new StringReader(body));
+                fail("Error: broken JSON should not parse: " + body);
+            } catch (JSONException expected) {
+                // an invalid response, not an IOException as for a connection problem
+            }
+        }
+    }
+
+    /*
+        Not a pass/fail test: logs average parse time and the bytes allocated while parsing,
+        for the streaming parser and for the old read-into-a-String plus JSONObject approach.
+        Both read the same InputStream, so the tree parser pays for building the String.
+     */
+    public void testParseBenchmark() throws Throwable {
+        for (int days : new int[] {14, 16, 30}) {
+            byte[] payload = createForecastJson(days).getBytes("UTF-8");
+            benchmark("stream", days, payload, true);
+            benchmark("tree", days, payload, false);
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private void benchmark(String label, int days, byte[] payload, boolean streaming)
+            throws IOException, JSONException {
+        long allocated = 0;
+        long elapsed = 0;
+        for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+            ByteArrayInputStream in = new ByteArrayInputStream(payload);
+            Debug.startAllocCounting();
+            Debug.resetThreadAllocSize();
+            long start = System.nanoTime();
+
+            ForecastJsonParser parser = new ForecastJsonParser(JULIAN_START_DAY);
+            ForecastJsonParser.Forecast forecast = streaming
+                    ? parser.parseStream(new InputStreamReader(in, "UTF-8"))
+                    : parser.parseTree(readLikeBefore(in));
+
+            elapsed += System.nanoTime() - start;
+            allocated += Debug.getThreadAllocSize();
+            Debug.stopAllocCounting();
+            assertEquals(days, forecast.days.size());
+        }
+        Log.i(LOG_TAG, String.format("%s parser, %d days: %d us/parse, %d KB allocated/parse",
+                label, days, elapsed / BENCHMARK_ITERATIONS / 1000,
+                allocated / BENCHMARK_ITERATIONS / 1024));
+    }
+
+    /**
+     * Reads the response into a String the way the sync adapter did before it streamed.
+     */
+    private static String readLikeBefore(InputStream inputStream) throws IOException {
+        StringBuffer buffer = new StringBuffer();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            buffer.append(line + "\n");
+        }
+        return buffer.toString();
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.wear;
+
+import android.test.AndroidTestCase;
+
+public class TestForecastPayload extends AndroidTestCase {
+
+    public void testLayout() {
+        int[] weatherIds = {800, 501};
+        double[] highs = {24.4, -3.6};
+        double[] lows = {15.5, -12};
+        byte[] payload = ForecastPayload.encode(17000, weatherIds, highs, lows, 2, true);
+
+        assertEquals(ForecastPayload.HEADER_SIZE + 2 * ForecastPayload.DAY_SIZE, payload.length);
+        assertEquals(ForecastPayload.VERSION, payload[0]);
+        assertEquals(ForecastPayload.FLAG_METRIC, payload[1]);
+        assertEquals(17000, (payload[2] & 0xff) << 8 | payload[3] & 0xff);
+        assertEquals(2, payload[4]);
+
+        assertEquals(800, (payload[5] & 0xff) << 8 | payload[6] & 0xff);
+        assertEquals(24, payload[7]);
+        assertEquals(16, payload[8]);
+        assertEquals(501, (payload[9] & 0xff) << 8 | payload[10] & 0xff);
+        assertEquals(-4, payload[11]);
+        assertEquals(-12, payload[12]);
+    }
+
+    public void testImperialAndClamping() {
+        assertEquals(32, ForecastPayload.toDegrees(0, false));
+        assertEquals(Byte.MAX_VALUE, ForecastPayload.toDegrees(100, false));
+        assertEquals(Byte.MIN_VALUE, ForecastPayload.toDegrees(-200, true));
+
+        byte[] payload = ForecastPayload.encode(0, new int[] {800}, new double[] {20},
+                new double[] {10}, 1, false);
+        assertEquals(0, payload[1]);
+        assertEquals(68, payload[ForecastPayload.HEADER_SIZE + 2]);
+        assertEquals(50, payload[ForecastPayload.HEADER_SIZE + 3]);
+    }
+
+    public void testAtMostMaxDays() {
+        int days = ForecastPayload.MAX_DAYS + 3;
+        byte[] payload = ForecastPayload.encode(0, new int[days], new double[days],
+                new double[days], days, true);
+        assertEquals(ForecastPayload.MAX_DAYS, payload[4]);
+        assertEquals(ForecastPayload.HEADER_SIZE
+                + ForecastPayload.MAX_DAYS * ForecastPayload.DAY_SIZE, payload.length);
+    }
+}
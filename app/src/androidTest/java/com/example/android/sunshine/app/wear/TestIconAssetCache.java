@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.wear;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.R;
+import com.google.android.gms.wearable.Asset;
+
+import java.io.ByteArrayOutputStream;
+
+public class TestIconAssetCache extends AndroidTestCase {
+
+    private static final String LOG_TAG = TestIconAssetCache.class.getSimpleName();
+
+    private static final int PUSHES = 50;
+
+    public void testEncodedOnceAndSizedForTheWatch() {
+        Resources resources = mContext.getResources();
+        byte[] encoded = IconAssetCache.getEncoded(resources, R.drawable.ic_clear);
+        assertNotNull(encoded);
+        assertSame(encoded, IconAssetCache.getEncoded(resources, R.drawable.ic_clear));
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(encoded, 0, encoded.length, options);
+        assertTrue(options.outWidth > 0);
+        assertTrue("Error: icon is " + options.outWidth + " pixels wide",
+                options.outWidth <= IconAssetCache.ICON_SIZE);
+        assertTrue(options.outHeight <= IconAssetCache.ICON_SIZE);
+
+        assertNull(IconAssetCache.getAsset(resources, -1));
+    }
+
+    /**
+     * Compares the icon part of a wearable push, as it was (decode the resource at phone density
+     * and compress it every time) and with the cache.
+     */
+    public void testPushBenchmark() {
+        Resources resources = mContext.getResources();
+        int[] icons = {R.drawable.ic_clear, R.drawable.ic_rain, R.drawable.ic_cloudy};
+
+        long start = System.nanoTime();
+        int uncachedBytes = 0;
+        for (int i = 0; i < PUSHES; i++) {
+            Bitmap bitmap = BitmapFactory.decodeResource(resources, icons[i % icons.length]);
+            ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
+            bitmap.compress(Bitmap.CompressFormat.PNG, 100, byteStream);
+            uncachedBytes = byteStream.size();
+            Asset.createFromBytes(byteStream.toByteArray());
+        }
+        long uncachedNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < PUSHES; i++) {
+            assertNotNull(IconAssetCache.getAsset(resources, icons[i % icons.length]));
+        }
+        long cachedNanos = System.nanoTime() - start;
+        int cachedBytes = IconAssetCache.getEncoded(resources, icons[(PUSHES - 1) % icons.length]).length;
+
+        Log.i(LOG_TAG, String.format("icon per push: %d us and %d bytes uncached, "
+                        + "%d us and %d bytes cached", uncachedNanos / PUSHES / 1000, uncachedBytes,
+                cachedNanos / PUSHES / 1000, cachedBytes));
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.wear;
+
+import android.content.Context;
+import android.test.AndroidTestCase;
+
+public class TestWearRefreshCoalescer extends AndroidTestCase {
+
+    private static final long NOW = 1470000000000L;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        clearTimes();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        clearTimes();
+        super.tearDown();
+    }
+
+    private void clearTimes() {
+        mContext.getSharedPreferences("wear_refresh", Context.MODE_PRIVATE).edit().clear().commit();
+    }
+
+    public void testBurstIsOneSync() {
+        WearRefreshCoalescer coalescer = new WearRefreshCoalescer(mContext);
+        assertEquals(WearRefreshCoalescer.REQUEST_SYNC, coalescer.onRefreshRequested(NOW));
+        for (long t = NOW + 1000; t < NOW + WearRefreshCoalescer.MIN_REFRESH_INTERVAL; t += 60000) {
+            assertEquals(WearRefreshCoalescer.COALESCED, coalescer.onRefreshRequested(t));
+        }
+        // the sync never completed, so once the interval is over it is asked for again
+        assertEquals(WearRefreshCoalescer.REQUEST_SYNC, coalescer.onRefreshRequested(
+                NOW + WearRefreshCoalescer.MIN_REFRESH_INTERVAL));
+    }
+
+    public void testFreshDataIsAnsweredFromTheDatabase() {
+        WearRefreshCoalescer coalescer = new WearRefreshCoalescer(mContext);
+        coalescer.onSyncCompleted(NOW);
+
+        assertEquals(WearRefreshCoalescer.ANSWER_FROM_DATABASE,
+                coalescer.onRefreshRequested(NOW + 1000));
+        assertEquals(WearRefreshCoalescer.ANSWER_FROM_DATABASE, new WearRefreshCoalescer(mContext)
+                .onRefreshRequested(NOW + WearRefreshCoalescer.FRESH_INTERVAL - 1));
+        assertEquals(WearRefreshCoalescer.REQUEST_SYNC,
+                coalescer.onRefreshRequested(NOW + WearRefreshCoalescer.FRESH_INTERVAL));
+    }
+
+    public void testClockSetBack() {
+        WearRefreshCoalescer coalescer = new WearRefreshCoalescer(mContext);
+        coalescer.onSyncCompleted(NOW);
+        assertEquals(WearRefreshCoalescer.REQUEST_SYNC, coalescer.onRefreshRequested(NOW - 1000));
+    }
+}
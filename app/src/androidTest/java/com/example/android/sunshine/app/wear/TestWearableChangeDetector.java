@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.wear;
+
+import android.content.Context;
+import android.test.AndroidTestCase;
+
+public class TestWearableChangeDetector extends AndroidTestCase {
+
+    private static final byte[] FORECAST = {1, 1, 0x42, 0x10, 1, 0x03, 0x20, 24, 15};
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        clearLastPush();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        clearLastPush();
+        super.tearDown();
+    }
+
+    private void clearLastPush() {
+        mContext.getSharedPreferences("wearables", Context.MODE_PRIVATE).edit().clear().commit();
+    }
+
+    public void testUnchangedPushesAreSuppressed() {
+        WearableChangeDetector detector = new WearableChangeDetector(mContext);
+        assertTrue("Error: the first push should always go out",
+                detector.hasChanged("24°", "15°", 800, FORECAST));
+        detector.onSent("24°", "15°", 800, FORECAST);
+
+        // as on the next sync, with a new detector
+        detector = new WearableChangeDetector(mContext);
+        long suppressed = WearableChangeDetector.getPushesSuppressed();
+        assertFalse(detector.hasChanged("24°", "15°", 800, FORECAST.clone()));
+        assertEquals(suppressed + 1, WearableChangeDetector.getPushesSuppressed());
+    }
+
+    public void testEveryShownValueCounts() {
+        WearableChangeDetector detector = new WearableChangeDetector(mContext);
+        detector.onSent("24°", "15°", 800, FORECAST);
+
+        assertTrue(detector.hasChanged("25°", "15°", 800, FORECAST));
+        assertTrue(detector.hasChanged("24°", "14°", 800, FORECAST));
+        assertTrue(detector.hasChanged("24°", "15°", 801, FORECAST));
+        byte[] forecast = FORECAST.clone();
+        forecast[forecast.length - 1]++;
+        assertTrue(detector.hasChanged("24°", "15°", 800, forecast));
+        assertTrue(detector.hasChanged("24°", "15°", 800, null));
+    }
+
+    public void testForgottenPushGoesOutAgain() {
+        WearableChangeDetector detector = new WearableChangeDetector(mContext);
+        assertEquals(-1, detector.getLastWeatherId());
+        detector.onSent("24°", "15°", 800, FORECAST);
+        assertEquals(800, detector.getLastWeatherId());
+
+        // as when a watch lost the icon
+        detector.forget();
+        assertEquals(-1, detector.getLastWeatherId());
+        assertTrue(detector.hasChanged("24°", "15°", 800, FORECAST));
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.text.format.Time;
+import android.util.SparseArray;
+
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Formats the days shown in the forecast list, the widgets, the notification and the detail
+ * view.  The formatters are created once per locale and time zone, and every string is
+ * remembered by the day it's for, so the rows of a list or a widget that are bound again and
+ * again don't each create a Time and a SimpleDateFormat.
+ * <p>
+ * What "today" is, the locale and the time zone are checked on every call, and everything is
+ * dropped when one of them changes.  The methods are synchronized, so the widget binder threads,
+ * the sync thread and the main thread can share the one instance.
+ */
+final class DayFormatter {
+
+    private static final int KIND_FRIENDLY = 0;
+    private static final int KIND_FRIENDLY_LONG_TODAY = 1;
+    private static final int KIND_FULL_FRIENDLY = 2;
+    private static final int KIND_DAY_NAME = 3;
+    private static final int KIND_MONTH_DAY = 4;
+    private static final int KINDS = 5;
+
+    // A list shows two weeks, so this is plenty, and bounds the memo if the clock jumps around
+    private static final int MAX_MEMO_SIZE = 256;
+
+    private static final DayFormatter sInstance = new DayFormatter();
+
+    // The formatters and everything remembered are for this locale, time zone and today
+    private Locale mLocale;
+    private String mTimeZoneId;
+    private int mToday;
+    private long mGmtOffSeconds;
+
+    private SimpleDateFormat mShortDateFormat;
+    private SimpleDateFormat mDayFormat;
+    private SimpleDateFormat mMonthDayFormat;
+
+    // Formatted strings by julian day * KINDS + kind
+    private final SparseArray<String> mMemo = new SparseArray<String>();
+
+    private int mHits;
+    private int mMisses;
+
+    static DayFormatter getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * "Today, June 8" for today if displayLongToday, "Today" or "Tomorrow", the day of the week
+     * for the rest of the week and "Mon Jun 08" after that.
+     */
+    synchronized String getFriendlyDayString(Context context, long dateInMillis,
+                                             boolean displayLongToday) {
+        int julianDay = toJulianDay(dateInMillis);
+        int kind = displayLongToday ? KIND_FRIENDLY_LONG_TODAY : KIND_FRIENDLY;
+        String text = recall(julianDay, kind);
+        if (text == null) {
+            if (displayLongToday && julianDay == mToday) {
+                text = context.getString(R.string.format_full_friendly_date,
+                        context.getString(R.string.today), getFormattedMonthDay(dateInMillis));
+            } else if (julianDay < mToday + 7) {
+                // less than a week in the future, just the day name
+                text = getDayName(context, dateInMillis);
+            } else {
+                text = mShortDateFormat.format(dateInMillis);
+            }
+            remember(julianDay, kind, text);
+        }
+        return text;
+    }
+
+    /**
+     * The day name and the month and day, e.g. "Tomorrow, June 9" or "Friday, June 12".
+     */
+    synchronized String getFullFriendlyDayString(Context context, long dateInMillis) {
+        int julianDay = toJulianDay(dateInMillis);
+        String text = recall(julianDay, KIND_FULL_FRIENDLY);
+        if (text == null) {
+            text = context.getString(R.string.format_full_friendly_date,
+                    getDayName(context, dateInMillis), getFormattedMonthDay(dateInMillis));
+            remember(julianDay, KIND_FULL_FRIENDLY, text);
+        }
+        return text;
+    }
+
+    /**
+     * "Today", "Tomorrow" or the day of the week, e.g. "Wednesday".
+     */
+    synchronized String getDayName(Context context, long dateInMillis) {
+        int julianDay = toJulianDay(dateInMillis);
+        String text = recall(julianDay, KIND_DAY_NAME);
+        if (text == null) {
+            if (julianDay == mToday) {
+                text = context.getString(R.string.today);
+            } else if (julianDay == mToday + 1) {
+                text = context.getString(R.string.tomorrow);
+            } else {
+                text = mDayFormat.format(dateInMillis);
+            }
+            remember(julianDay, KIND_DAY_NAME, text);
+        }
+        return text;
+    }
+
+    /**
+     * The month and day, e.g. "June 24".
+     */
+    synchronized String getFormattedMonthDay(long dateInMillis) {
+        int julianDay = toJulianDay(dateInMillis);
+        String text = recall(julianDay, KIND_MONTH_DAY);
+        if (text == null) {
+            text = mMonthDayFormat.format(dateInMillis);
+            remember(julianDay, KIND_MONTH_DAY, text);
+        }
+        return text;
+    }
+
+    synchronized int getHitCount() {
+        return mHits;
+    }
+
+    synchronized int getMissCount() {
+        return mMisses;
+    }
+
+    /**
+     * Brings the locale, time zone and today up to date, dropping everything that was for
+     * others, and returns the julian day of the date.  Like the formatting always did, the day
+     * is taken at today's offset from UTC.
+     */
+    private int toJulianDay(long dateInMillis) {
+        Locale locale = Locale.getDefault();
+        TimeZone timeZone = TimeZone.getDefault();
+        long now = System.currentTimeMillis();
+        if (!locale.equals(mLocale) || !timeZone.getID().equals(mTimeZoneId)) {
+            mLocale = locale;
+            mTimeZoneId = timeZone.getID();
+            // SimpleDateFormat takes the default locale and time zone when it's created
+            mShortDateFormat = new SimpleDateFormat("EEE MMM dd");
+            mDayFormat = new SimpleDateFormat("EEEE");
+            mMonthDayFormat = new SimpleDateFormat("MMMM dd");
+            mToday = -1;
+        }
+        long gmtOffSeconds = timeZone.getOffset(now) / 1000;
+        int today = Time.getJulianDay(now, gmtOffSeconds);
+        if (today != mToday || gmtOffSeconds != mGmtOffSeconds) {
+            // a new day, or a daylight saving time change
+            mToday = today;
+            mGmtOffSeconds = gmtOffSeconds;
+            mMemo.clear();
+        }
+        return Time.getJulianDay(dateInMillis, mGmtOffSeconds);
+    }
+
+    private String recall(int julianDay, int kind) {
+        String text = mMemo.get(julianDay * KINDS + kind);
+        if (text != null) {
+            mHits++;
+        } else {
+            mMisses++;
+        }
+        return text;
+    }
+
+    private void remember(int julianDay, int kind, String text) {
+        if (mMemo.size() >= MAX_MEMO_SIZE) {
+            mMemo.clear();
+        }
+        mMemo.put(julianDay * KINDS + kind, text);
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.text.TextUtils;
+
+/**
+ * One day of the forecast list, with everything {@link ForecastAdapter} shows for it already
+ * formatted, so binding a row only assigns fields.  Built by {@link ForecastRows} off the main
+ * thread.
+ */
+public final class ForecastRow {
+
+    private final long mDate;
+    private final int mWeatherId;
+    private final int mIconResource;
+    private final int mArtResource;
+    private final String mArtUrl;
+    private final String mDayText;
+    private final String mLongDayText;
+    private final String mDescription;
+    private final String mDescriptionA11y;
+    private final String mHigh;
+    private final String mHighA11y;
+    private final String mLow;
+    private final String mLowA11y;
+
+    ForecastRow(long date, int weatherId, int iconResource, int artResource, String artUrl,
+                String dayText, String longDayText, String description, String descriptionA11y,
+                String high, String highA11y, String low, String lowA11y) {
+        mDate = date;
+        mWeatherId = weatherId;
+        mIconResource = iconResource;
+        mArtResource = artResource;
+        mArtUrl = artUrl;
+        mDayText = dayText;
+        mLongDayText = longDayText;
+        mDescription = description;
+        mDescriptionA11y = descriptionA11y;
+        mHigh = high;
+        mHighA11y = highA11y;
+        mLow = low;
+        mLowA11y = lowA11y;
+    }
+
+    public long getDate() {
+        return mDate;
+    }
+
+    public int getWeatherId() {
+        return mWeatherId;
+    }
+
+    /**
+     * @return the small icon, as shown for every day but today
+     */
+    public int getIconResource() {
+        return mIconResource;
+    }
+
+    /**
+     * @return the large art, as shown for today
+     */
+    public int getArtResource() {
+        return mArtResource;
+    }
+
+    /**
+     * @return the art pack image to load, or null when using the local graphics
+     */
+    public String getArtUrl() {
+        return mArtUrl;
+    }
+
+    /**
+     * @return "Tomorrow", "Wednesday" or "Mon Jun 8"
+     */
+    public String getDayText() {
+        return mDayText;
+    }
+
+    /**
+     * @return "Today, June 8" for today, the same as getDayText() for any other day
+     */
+    public String getLongDayText() {
+        return mLongDayText;
+    }
+
+    public String getDescription() {
+        return mDescription;
+    }
+
+    public String getDescriptionA11y() {
+        return mDescriptionA11y;
+    }
+
+    public String getHigh() {
+        return mHigh;
+    }
+
+    public String getHighA11y() {
+        return mHighA11y;
+    }
+
+    public String getLow() {
+        return mLow;
+    }
+
+    public String getLowA11y() {
+        return mLowA11y;
+    }
+
+    /**
+     * @return whether the row shows the same as another one, apart from where it is in the list
+     */
+    boolean hasSameContents(ForecastRow other) {
+        return mDate == other.mDate
+                && mWeatherId == other.mWeatherId
+                && mIconResource == other.mIconResource
+                && mArtResource == other.mArtResource
+                && TextUtils.equals(mArtUrl, other.mArtUrl)
+                && TextUtils.equals(mDayText, other.mDayText)
+                && TextUtils.equals(mLongDayText, other.mLongDayText)
+                && TextUtils.equals(mDescription, other.mDescription)
+                && TextUtils.equals(mDescriptionA11y, other.mDescriptionA11y)
+                && TextUtils.equals(mHigh, other.mHigh)
+                && TextUtils.equals(mHighA11y, other.mHighA11y)
+                && TextUtils.equals(mLow, other.mLow)
+                && TextUtils.equals(mLowA11y, other.mLowA11y);
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.support.v4.os.TraceCompat;
+import android.support.v7.util.DiffUtil;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The rows of the forecast list, built from the loader's cursor in one pass on the loader's
+ * thread: every preference is read once for the whole list instead of several times per bound
+ * row, and every string is formatted before the list ever scrolls.
+ * <p>
+ * The loader also works out, on the same thread, what changed since the rows it loaded before
+ * (see {@link #diff}), so the adapter can tell the RecyclerView only about the rows that
+ * changed instead of rebinding them all.
+ */
+public final class ForecastRows {
+
+    static final ForecastRows EMPTY = new ForecastRows(Collections.<ForecastRow>emptyList(),
+            null, null, null, null);
+
+    private final List<ForecastRow> mRows;
+    private final String mCoordLat;
+    private final String mCoordLong;
+
+    // The rows the diff leads from.  Weak, so that a chain of loads doesn't keep every older
+    // list alive.
+    private final WeakReference<ForecastRows> mPrevious;
+    private final DiffUtil.DiffResult mDiff;
+
+    private ForecastRows(List<ForecastRow> rows, String coordLat, String coordLong,
+                         ForecastRows previous, DiffUtil.DiffResult diff) {
+        mRows = rows;
+        mCoordLat = coordLat;
+        mCoordLong = coordLong;
+        mPrevious = previous != null ? new WeakReference<ForecastRows>(previous) : null;
+        mDiff = diff;
+    }
+
+    /**
+     * Reads every row of a cursor with ForecastFragment's FORECAST_COLUMNS.  Doesn't close it.
+     */
+    static ForecastRows fromCursor(Context context, Cursor cursor) {
+        TraceCompat.beginSection("ForecastRows.fromCursor");
+        try {
+            int count = cursor.getCount();
+            if (count == 0) {
+                return EMPTY;
+            }
+            boolean isMetric = Utility.isMetric(context);
+            boolean usingLocalGraphics = Utility.usingLocalGraphics(context);
+
+            List<ForecastRow> rows = new ArrayList<ForecastRow>(count);
+            String coordLat = null;
+            String coordLong = null;
+            for (int i = 0; cursor.moveToPosition(i); i++) {
+                if (i == 0) {
+                    coordLat = cursor.getString(ForecastFragment.COL_COORD_LAT);
+                    coordLong = cursor.getString(ForecastFragment.COL_COORD_LONG);
+                }
+                long date = cursor.getLong(ForecastFragment.COL_WEATHER_DATE);
+                int weatherId = cursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
+                String dayText = Utility.getFriendlyDayString(context, date, false);
+                // only today reads differently in the long form
+                String longDayText = i == 0
+                        ? Utility.getFriendlyDayString(context, date, true) : dayText;
+                String description = Utility.getStringForWeatherCondition(context, weatherId);
+                String high = Utility.formatTemperature(context,
+                        cursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP), isMetric);
+                String low = Utility.formatTemperature(context,
+                        cursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP), isMetric);
+                rows.add(new ForecastRow(date, weatherId,
+                        Utility.getIconResourceForWeatherCondition(weatherId),
+                        Utility.getArtResourceForWeatherCondition(weatherId),
+                        usingLocalGraphics
+                                ? null : Utility.getArtUrlForWeatherCondition(context, weatherId),
+                        dayText, longDayText,
+                        description, context.getString(R.string.a11y_forecast, description),
+                        high, context.getString(R.string.a11y_high_temp, high),
+                        low, context.getString(R.string.a11y_low_temp, low)));
+            }
+            return new ForecastRows(Collections.unmodifiableList(rows), coordLat, coordLong,
+                    null, null);
+        } finally {
+            TraceCompat.endSection();
+        }
+    }
+
+    /**
+     * Works out the updates that turn the previous rows into these, matching rows by date.
+     * Takes time in proportion to the number of rows, so call it off the main thread.
+     *
+     * @return the same rows, along with the diff from the previous ones
+     */
+    static ForecastRows diff(final ForecastRows previous, final ForecastRows rows) {
+        if (previous == null) {
+            return rows;
+        }
+        TraceCompat.beginSection("ForecastRows.diff");
+        try {
+            // Both lists are in date order, so rows never move, they are only added, removed
+            // or changed.
+            DiffUtil.DiffResult diff = DiffUtil.calculateDiff(new DiffUtil.Callback() {
+                @Override
+                public int getOldListSize() {
+                    return previous.size();
+                }
+
+                @Override
+                public int getNewListSize() {
+                    return rows.size();
+                }
+
+                @Override
+                public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+                    return previous.get(oldItemPosition).getDate()
+                            == rows.get(newItemPosition).getDate();
+                }
+
+                @Override
+                public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+                    // the first row may have its own layout, so a row moving to or from the
+                    // top has to be bound again
+                    return (oldItemPosition == 0) == (newItemPosition == 0)
+                            && previous.get(oldItemPosition).hasSameContents(
+                                    rows.get(newItemPosition));
+                }
+            }, false);
+            return new ForecastRows(rows.mRows, rows.mCoordLat, rows.mCoordLong, previous, diff);
+        } finally {
+            TraceCompat.endSection();
+        }
+    }
+
+    /**
+     * @return the updates that turn the given rows into these, or null if these weren't
+     * diffed against them
+     */
+    DiffUtil.DiffResult getDiffFrom(ForecastRows rows) {
+        if (mDiff == null || mPrevious == null || mPrevious.get() != rows) {
+            return null;
+        }
+        return mDiff;
+    }
+
+    public int size() {
+        return mRows.size();
+    }
+
+    public ForecastRow get(int position) {
+        return mRows.get(position);
+    }
+
+    public List<ForecastRow> asList() {
+        return mRows;
+    }
+
+    /**
+     * @return the position of the row for the date, or -1 if there is none
+     */
+    public int indexOfDate(long date) {
+        for (int i = 0; i < mRows.size(); i++) {
+            if (mRows.get(i).getDate() == date) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the latitude of the location, or null if there are no rows
+     */
+    public String getCoordLat() {
+        return mCoordLat;
+    }
+
+    public String getCoordLong() {
+        return mCoordLong;
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+
+/**
+ * The location, units and art pack settings, read once instead of on every row of the forecast
+ * list, the widgets and the notification.  A snapshot never changes: when one of the settings
+ * does, a new snapshot is built and swapped in by a listener on the default SharedPreferences.
+ * <p>
+ * Those settings are only ever written by the settings screen on the main thread, which is also
+ * where the listener is called, so nothing that reacts to a settings change reads an old
+ * snapshot.  The location status isn't in here: the sync thread writes it and other listeners
+ * read it right away, maybe before this one has run.
+ */
+final class SettingsSnapshot {
+
+    private static final Object sLock = new Object();
+    private static volatile SettingsSnapshot sCurrent;
+    // SharedPreferences only keeps a weak reference to its listeners
+    private static SharedPreferences.OnSharedPreferenceChangeListener sListener;
+
+    private final String mLocation;
+    private final boolean mMetric;
+    private final String mArtPack;
+    private final boolean mUsingLocalGraphics;
+    // The art pack's URL for every kind of condition
+    private final String[] mArtUrls;
+
+    private SettingsSnapshot(Context context, SharedPreferences prefs) {
+        mLocation = prefs.getString(context.getString(R.string.pref_location_key),
+                context.getString(R.string.pref_location_default));
+        String metric = context.getString(R.string.pref_units_metric);
+        mMetric = prefs.getString(context.getString(R.string.pref_units_key), metric)
+                .equals(metric);
+        String sunshineArtPack = context.getString(R.string.pref_art_pack_sunshine);
+        mArtPack = prefs.getString(context.getString(R.string.pref_art_pack_key), sunshineArtPack);
+        mUsingLocalGraphics = mArtPack.equals(sunshineArtPack);
+        mArtUrls = WeatherConditions.expandArtUrls(mArtPack);
+    }
+
+    /**
+     * Returns the current settings, reading them the first time.
+     */
+    static SettingsSnapshot get(Context context) {
+        SettingsSnapshot snapshot = sCurrent;
+        if (snapshot != null) {
+            return snapshot;
+        }
+        synchronized (sLock) {
+            if (sCurrent == null) {
+                final Context appContext = context.getApplicationContext();
+                SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(appContext);
+                final String locationKey = appContext.getString(R.string.pref_location_key);
+                final String unitsKey = appContext.getString(R.string.pref_units_key);
+                final String artPackKey = appContext.getString(R.string.pref_art_pack_key);
+                sListener = new SharedPreferences.OnSharedPreferenceChangeListener() {
+                    @Override
+                    public void onSharedPreferenceChanged(SharedPreferences sharedPreferences,
+                                                          String key) {
+                        if (key.equals(locationKey) || key.equals(unitsKey)
+                                || key.equals(artPackKey)) {
+                            sCurrent = new SettingsSnapshot(appContext, sharedPreferences);
+                        }
+                    }
+                };
+                prefs.registerOnSharedPreferenceChangeListener(sListener);
+                sCurrent = new SettingsSnapshot(appContext, prefs);
+            }
+            return sCurrent;
+        }
+    }
+
+    String getLocation() {
+        return mLocation;
+    }
+
+    boolean isMetric() {
+        return mMetric;
+    }
+
+    /**
+     * @return the URL format of the art pack, with a %s for the condition
+     */
+    String getArtPack() {
+        return mArtPack;
+    }
+
+    /**
+     * @return the art pack's URL for the condition, or null for an unknown condition
+     */
+    String getArtUrl(int weatherId) {
+        return WeatherConditions.getArtUrl(mArtUrls, weatherId);
+    }
+
+    boolean isUsingLocalGraphics() {
+        return mUsingLocalGraphics;
+    }
+}
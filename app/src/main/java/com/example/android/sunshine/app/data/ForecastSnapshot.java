@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.util.Log;
+
+import com.example.android.sunshine.app.Utility;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An immutable, in-memory copy of the stored forecast for one location: the date, condition,
+ * high, low and description of every day, in date order.
+ * <p>
+ * The notification, the wearables, the Today widget and Muzei all only need a day or two of
+ * the preferred location's forecast, so instead of each of them querying the provider they
+ * share the snapshot kept here.  WeatherProvider drops every snapshot whenever it writes, and
+ * the sync adapter rebuilds the preferred location's one as soon as a sync has stored its data.
+ */
+public final class ForecastSnapshot {
+
+    private static final String LOG_TAG = ForecastSnapshot.class.getSimpleName();
+
+    private static final String[] SNAPSHOT_COLUMNS = {
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC
+    };
+    // these indices must match the projection
+    private static final int INDEX_DATE = 0;
+    private static final int INDEX_WEATHER_ID = 1;
+    private static final int INDEX_MAX_TEMP = 2;
+    private static final int INDEX_MIN_TEMP = 3;
+    private static final int INDEX_SHORT_DESC = 4;
+
+    private static final Object sLock = new Object();
+    // Snapshots by location setting, guarded by sLock
+    private static final HashMap<String, ForecastSnapshot> sSnapshots =
+            new HashMap<String, ForecastSnapshot>();
+    // Bumped by every invalidate(), so a snapshot loaded while a write happened isn't kept
+    private static long sGeneration;
+
+    private static final AtomicLong sHits = new AtomicLong();
+    private static final AtomicLong sMisses = new AtomicLong();
+
+    private final String mLocationSetting;
+    private final long[] mDates;
+    private final int[] mWeatherIds;
+    private final double[] mHighs;
+    private final double[] mLows;
+    private final String[] mDescriptions;
+
+    private ForecastSnapshot(String locationSetting, int dayCount) {
+        mLocationSetting = locationSetting;
+        mDates = new long[dayCount];
+        mWeatherIds = new int[dayCount];
+        mHighs = new double[dayCount];
+        mLows = new double[dayCount];
+        mDescriptions = new String[dayCount];
+    }
+
+    /**
+     * Returns the snapshot of the preferred location.
+     */
+    public static ForecastSnapshot get(Context context) {
+        return get(context, Utility.getPreferredLocation(context));
+    }
+
+    /**
+     * Returns the snapshot of a location, loading it from the provider if there is none yet.
+     * Must not be called on the main thread, since that load may have to hit the database.
+     */
+    public static ForecastSnapshot get(Context context, String locationSetting) {
+        long generation;
+        synchronized (sLock) {
+            ForecastSnapshot snapshot = sSnapshots.get(locationSetting);
+            if (snapshot != null) {
+                sHits.incrementAndGet();
+                return snapshot;
+            }
+            generation = sGeneration;
+        }
+        sMisses.incrementAndGet();
+        ForecastSnapshot snapshot = load(context.getContentResolver(), locationSetting);
+        synchronized (sLock) {
+            if (generation == sGeneration) {
+                sSnapshots.put(locationSetting, snapshot);
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Replaces the snapshot of a location with a fresh one from the provider.
+     */
+    public static ForecastSnapshot rebuild(Context context, String locationSetting) {
+        long generation;
+        synchronized (sLock) {
+            generation = sGeneration;
+        }
+        ForecastSnapshot snapshot = load(context.getContentResolver(), locationSetting);
+        synchronized (sLock) {
+            if (generation == sGeneration) {
+                sSnapshots.put(locationSetting, snapshot);
+            }
+        }
+        Log.d(LOG_TAG, "Rebuilt " + locationSetting + " with " + snapshot.getDayCount() +
+                " days, " + sHits.get() + " hits and " + sMisses.get() + " misses so far");
+        return snapshot;
+    }
+
+    /**
+     * Drops every snapshot.  Called by WeatherProvider once its data has changed.
+     */
+    static void invalidate() {
+        synchronized (sLock) {
+            sGeneration++;
+            sSnapshots.clear();
+        }
+    }
+
+    public static long getHitCount() {
+        return sHits.get();
+    }
+
+    public static long getMissCount() {
+        return sMisses.get();
+    }
+
+    private static ForecastSnapshot load(ContentResolver resolver, String locationSetting) {
+        Cursor cursor = resolver.query(
+                WeatherContract.WeatherEntry.buildWeatherLocation(locationSetting),
+                SNAPSHOT_COLUMNS, null, null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        if (cursor == null) {
+            return new ForecastSnapshot(locationSetting, 0);
+        }
+        try {
+            ForecastSnapshot snapshot = new ForecastSnapshot(locationSetting, cursor.getCount());
+            for (int i = 0; cursor.moveToNext(); i++) {
+                snapshot.mDates[i] = cursor.getLong(INDEX_DATE);
+                snapshot.mWeatherIds[i] = cursor.getInt(INDEX_WEATHER_ID);
+                snapshot.mHighs[i] = cursor.getDouble(INDEX_MAX_TEMP);
+                snapshot.mLows[i] = cursor.getDouble(INDEX_MIN_TEMP);
+                snapshot.mDescriptions[i] = cursor.getString(INDEX_SHORT_DESC);
+            }
+            return snapshot;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public String getLocationSetting() {
+        return mLocationSetting;
+    }
+
+    public int getDayCount() {
+        return mDates.length;
+    }
+
+    /**
+     * @return the index of the day the given time falls on, or -1 if it isn't in the snapshot.
+     */
+    public int indexOfDate(long time) {
+        int index = Arrays.binarySearch(mDates, WeatherContract.normalizeDate(time));
+        return index >= 0 ? index : -1;
+    }
+
+    /**
+     * @return the index of the first day on or after the day the given time falls on, or -1 if
+     * the snapshot ends before it.
+     */
+    public int indexOfFirstDateFrom(long time) {
+        int index = Arrays.binarySearch(mDates, WeatherContract.normalizeDate(time));
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return index < mDates.length ? index : -1;
+    }
+
+    public long getDate(int day) {
+        return mDates[day];
+    }
+
+    public int getWeatherId(int day) {
+        return mWeatherIds[day];
+    }
+
+    public double getHigh(int day) {
+        return mHighs[day];
+    }
+
+    public double getLow(int day) {
+        return mLows[day];
+    }
+
+    public String getDescription(int day) {
+        return mDescriptions[day];
+    }
+}
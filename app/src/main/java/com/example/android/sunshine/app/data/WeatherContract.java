@@ -81,6 +81,13 @@ public class WeatherContract {
         public static final String COLUMN_COORD_LAT = "coord_lat";
         public static final String COLUMN_COORD_LONG = "coord_long";
 
+        // HTTP validators of the last forecast response stored for this location, so the next
+        // sync can ask openweathermap whether anything changed.  A hash of the response body is
+        // kept as well, for responses that come back without usable validators.
+        public static final String COLUMN_ETAG = "etag";
+        public static final String COLUMN_LAST_MODIFIED = "last_modified";
+        public static final String COLUMN_CONTENT_HASH = "content_hash";
+
         public static Uri buildLocationUri(long id) {
             return ContentUris.withAppendedId(CONTENT_URI, id);
         }
@@ -130,6 +137,18 @@ public class WeatherContract {
             return ContentUris.withAppendedId(CONTENT_URI, id);
         }
 
+        // Query parameter asking bulkInsert to merge the rows with what is already stored: only
+        // days whose values actually changed are written, and only their URIs are notified.
+        public static final String PARAM_MERGE = "merge";
+
+        public static Uri buildWeatherMergeUri() {
+            return CONTENT_URI.buildUpon().appendQueryParameter(PARAM_MERGE, "1").build();
+        }
+
+        public static boolean isMergeUri(Uri uri) {
+            return "1".equals(uri.getQueryParameter(PARAM_MERGE));
+        }
+
         /*
             Student: This is the buildWeatherLocation function you filled in.
          */
@@ -18,6 +18,9 @@ package com.example.android.sunshine.app.data;
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
 
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
@@ -28,24 +31,92 @@ import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 public class WeatherDbHelper extends SQLiteOpenHelper {
 
     // If you change the database schema, you must increment the database version.
-    private static final int DATABASE_VERSION = 2;
+    static final int DATABASE_VERSION = 4;
+
+    private static final String LOG_TAG = WeatherDbHelper.class.getSimpleName();
 
     static final String DATABASE_NAME = "weather.db";
 
+    // The provider always looks weather up by location first and then by date, which the
+    // UNIQUE (date, location_id) index can't serve.  Lookups by date alone, like the cleanup
+    // of old days, still use that one.
+    static final String WEATHER_LOCATION_DATE_INDEX = "weather_location_date_idx";
+    private static final String SQL_CREATE_WEATHER_LOCATION_DATE_INDEX =
+            "CREATE INDEX IF NOT EXISTS " + WEATHER_LOCATION_DATE_INDEX + " ON " +
+                    WeatherEntry.TABLE_NAME + " (" + WeatherEntry.COLUMN_LOC_KEY + ", " +
+                    WeatherEntry.COLUMN_DATE + ");";
+
+    /**
+     * One step of the schema history, upgrading a database from one version to the next
+     * while keeping its data.
+     */
+    interface Migration {
+        void migrate(SQLiteDatabase db);
+    }
+
+    // Databases older than this are discarded on upgrade instead of migrated.
+    static final int OLDEST_MIGRATABLE_VERSION = 2;
+
+    // MIGRATIONS[i] upgrades version OLDEST_MIGRATABLE_VERSION + i to the version after it.
+    // When you increment DATABASE_VERSION, add the step that gets there at the end.
+    private static final Migration[] MIGRATIONS = new Migration[]{
+            // 2 -> 3: validators of the last forecast response for each location
+            new Migration() {
+                @Override
+                public void migrate(SQLiteDatabase db) {
+                    db.execSQL("ALTER TABLE " + LocationEntry.TABLE_NAME + " ADD COLUMN " +
+                            LocationEntry.COLUMN_ETAG + " TEXT");
+                    db.execSQL("ALTER TABLE " + LocationEntry.TABLE_NAME + " ADD COLUMN " +
+                            LocationEntry.COLUMN_LAST_MODIFIED + " TEXT");
+                    db.execSQL("ALTER TABLE " + LocationEntry.TABLE_NAME + " ADD COLUMN " +
+                            LocationEntry.COLUMN_CONTENT_HASH + " TEXT");
+                }
+            },
+            // 3 -> 4: index for looking weather up by location and date
+            new Migration() {
+                @Override
+                public void migrate(SQLiteDatabase db) {
+                    db.execSQL(SQL_CREATE_WEATHER_LOCATION_DATE_INDEX);
+                }
+            }
+    };
+
     public WeatherDbHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        // The sync adapter writes while the list, the detail view, the widgets, Muzei and the
+        // notification read.  With write-ahead logging readers keep reading the last committed
+        // data while a write transaction is open, instead of waiting for it.  There is still
+        // only ever one writer at a time.
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            setWriteAheadLoggingEnabled(true);
+        }
+    }
+
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
+                && Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN
+                && !db.isReadOnly()) {
+            // setWriteAheadLoggingEnabled only exists from Jelly Bean on
+            db.enableWriteAheadLogging();
+        }
     }
 
     @Override
     public void onCreate(SQLiteDatabase sqLiteDatabase) {
         // Create a table to hold locations.  A location consists of the string supplied in the
-        // location setting, the city name, and the latitude and longitude
+        // location setting, the city name, and the latitude and longitude, plus the validators
+        // of the last forecast we got for it
         final String SQL_CREATE_LOCATION_TABLE = "CREATE TABLE " + LocationEntry.TABLE_NAME + " (" +
                 LocationEntry._ID + " INTEGER PRIMARY KEY," +
                 LocationEntry.COLUMN_LOCATION_SETTING + " TEXT UNIQUE NOT NULL, " +
                 LocationEntry.COLUMN_CITY_NAME + " TEXT NOT NULL, " +
                 LocationEntry.COLUMN_COORD_LAT + " REAL NOT NULL, " +
-                LocationEntry.COLUMN_COORD_LONG + " REAL NOT NULL " +
+                LocationEntry.COLUMN_COORD_LONG + " REAL NOT NULL, " +
+                LocationEntry.COLUMN_ETAG + " TEXT, " +
+                LocationEntry.COLUMN_LAST_MODIFIED + " TEXT, " +
+                LocationEntry.COLUMN_CONTENT_HASH + " TEXT " +
                 " );";
 
         final String SQL_CREATE_WEATHER_TABLE = "CREATE TABLE " + WeatherEntry.TABLE_NAME + " (" +
@@ -81,18 +152,38 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
 
         sqLiteDatabase.execSQL(SQL_CREATE_LOCATION_TABLE);
         sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_TABLE);
+        sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_LOCATION_DATE_INDEX);
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase sqLiteDatabase, int oldVersion, int newVersion) {
-        // This database is only a cache for online data, so its upgrade policy is
-        // to simply to discard the data and start over
         // Note that this only fires if you change the version number for your database.
         // It does NOT depend on the version number for your application.
-        // If you want to update the schema without wiping data, commenting out the next 2 lines
-        // should be your top priority before modifying this method.
-        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
-        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
-        onCreate(sqLiteDatabase);
+        // SQLiteOpenHelper already runs this inside a single transaction, so either every
+        // step is applied or the database is left at its old version.
+        long start = SystemClock.uptimeMillis();
+        if (oldVersion < OLDEST_MIGRATABLE_VERSION) {
+            // We don't know how to carry these over.  The database is only a cache for online
+            // data, so discard it and start over.
+            sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
+            sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
+            onCreate(sqLiteDatabase);
+        } else {
+            migrate(sqLiteDatabase, oldVersion, newVersion);
+        }
+        Log.i(LOG_TAG, "Upgraded " + DATABASE_NAME + " from version " + oldVersion + " to " +
+                newVersion + " in " + (SystemClock.uptimeMillis() - start) + " ms");
+    }
+
+    /**
+     * Applies, in order, every migration step from one version to a later one.
+     */
+    static void migrate(SQLiteDatabase db, int fromVersion, int toVersion) {
+        for (int version = fromVersion; version < toVersion; version++) {
+            long start = SystemClock.uptimeMillis();
+            MIGRATIONS[version - OLDEST_MIGRATABLE_VERSION].migrate(db);
+            Log.d(LOG_TAG, "Migrated " + DATABASE_NAME + " from version " + version + " to " +
+                    (version + 1) + " in " + (SystemClock.uptimeMillis() - start) + " ms");
+        }
     }
 }
@@ -17,15 +17,61 @@ package com.example.android.sunshine.app.data;
 
 import android.annotation.TargetApi;
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.sqlite.SQLiteConstraintException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.v4.util.LongSparseArray;
+import android.text.TextUtils;
+import android.text.format.Time;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class WeatherProvider extends ContentProvider {
 
+    private static final String LOG_TAG = WeatherProvider.class.getSimpleName();
+
+    // Change notifications are held back for a short window so that everything a logical
+    // operation touches goes out as one deduplicated burst.  The window restarts with every
+    // new notification, but never holds one back for longer than NOTIFY_MAX_DELAY_MS.
+    private static final long NOTIFY_DEBOUNCE_MS = 100;
+    private static final long NOTIFY_MAX_DELAY_MS = 500;
+
+    // Instrumentation: how many notifications were asked for, how many actually went out, and
+    // how many queries (mostly loader requeries) the provider has served.
+    private static final AtomicLong sNotificationsRequested = new AtomicLong();
+    private static final AtomicLong sNotificationsDispatched = new AtomicLong();
+    private static final AtomicLong sQueries = new AtomicLong();
+
+    private final Object mNotifyLock = new Object();
+    private final LinkedHashSet<Uri> mPendingNotifications = new LinkedHashSet<Uri>();
+    private long mFirstPendingNotificationTime;
+    private int mBatchDepth;
+    private Handler mNotifyHandler;
+    private final Runnable mFlushNotifications = new Runnable() {
+        @Override
+        public void run() {
+            flushNotifications();
+        }
+    };
+
     // The URI Matcher used by this content provider.
     private static final UriMatcher sUriMatcher = buildUriMatcher();
     private WeatherDbHelper mOpenHelper;
@@ -35,7 +81,7 @@ public class WeatherProvider extends ContentProvider {
     static final int WEATHER_WITH_LOCATION_AND_DATE = 102;
     static final int LOCATION = 300;
 
-    private static final SQLiteQueryBuilder sWeatherByLocationSettingQueryBuilder;
+    static final SQLiteQueryBuilder sWeatherByLocationSettingQueryBuilder;
 
     static{
         sWeatherByLocationSettingQueryBuilder = new SQLiteQueryBuilder();
@@ -51,19 +97,41 @@ public class WeatherProvider extends ContentProvider {
                         "." + WeatherContract.LocationEntry._ID);
     }
 
+    // Columns bound, in order, by the compiled weather insert statement
+    private static final String[] WEATHER_INSERT_COLUMNS = new String[]{
+            WeatherContract.WeatherEntry.COLUMN_LOC_KEY,
+            WeatherContract.WeatherEntry.COLUMN_DATE,
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_HUMIDITY,
+            WeatherContract.WeatherEntry.COLUMN_PRESSURE,
+            WeatherContract.WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherContract.WeatherEntry.COLUMN_DEGREES
+    };
+
+    // INSERT INTO weather (location_id, date, ...) VALUES (?, ?, ...)
+    // Conflicts are still resolved by the table's UNIQUE(date, location_id) ON CONFLICT REPLACE.
+    private static final String SQL_INSERT_WEATHER =
+            "INSERT INTO " + WeatherContract.WeatherEntry.TABLE_NAME + " (" +
+                    TextUtils.join(", ", WEATHER_INSERT_COLUMNS) + ") VALUES (" +
+                    TextUtils.join(", ", Collections.nCopies(WEATHER_INSERT_COLUMNS.length, "?")) +
+                    ")";
+
     //location.location_setting = ?
-    private static final String sLocationSettingSelection =
+    static final String sLocationSettingSelection =
             WeatherContract.LocationEntry.TABLE_NAME+
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? ";
 
     //location.location_setting = ? AND date >= ?
-    private static final String sLocationSettingWithStartDateSelection =
+    static final String sLocationSettingWithStartDateSelection =
             WeatherContract.LocationEntry.TABLE_NAME+
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
                     WeatherContract.WeatherEntry.COLUMN_DATE + " >= ? ";
 
     //location.location_setting = ? AND date = ?
-    private static final String sLocationSettingAndDaySelection =
+    static final String sLocationSettingAndDaySelection =
             WeatherContract.LocationEntry.TABLE_NAME +
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
                     WeatherContract.WeatherEntry.COLUMN_DATE + " = ? ";
@@ -140,6 +208,7 @@ public class WeatherProvider extends ContentProvider {
     @Override
     public boolean onCreate() {
         mOpenHelper = new WeatherDbHelper(getContext());
+        mNotifyHandler = new Handler(Looper.getMainLooper());
         return true;
     }
 
@@ -175,6 +244,7 @@ public class WeatherProvider extends ContentProvider {
         // Here's the switch statement that, given a URI, will determine what kind of request it is,
         // and query the database accordingly.
         Cursor retCursor;
+        sQueries.incrementAndGet();
         switch (sUriMatcher.match(uri)) {
             // "weather/*/*"
             case WEATHER_WITH_LOCATION_AND_DATE:
@@ -251,7 +321,7 @@ public class WeatherProvider extends ContentProvider {
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
-        getContext().getContentResolver().notifyChange(uri, null);
+        notifyChange(uri);
         return returnUri;
     }
 
@@ -276,7 +346,7 @@ public class WeatherProvider extends ContentProvider {
         }
         // Because a null deletes all rows
         if (rowsDeleted != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(uri);
         }
         return rowsDeleted;
     }
@@ -310,7 +380,7 @@ public class WeatherProvider extends ContentProvider {
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
         if (rowsUpdated != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(uri);
         }
         return rowsUpdated;
     }
@@ -321,27 +391,345 @@ public class WeatherProvider extends ContentProvider {
         final int match = sUriMatcher.match(uri);
         switch (match) {
             case WEATHER:
-                db.beginTransaction();
-                int returnCount = 0;
-                try {
-                    for (ContentValues value : values) {
-                        normalizeDate(value);
-                        long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
-                        if (_id != -1) {
-                            returnCount++;
-                        }
-                    }
-                    db.setTransactionSuccessful();
-                } finally {
-                    db.endTransaction();
+                if (WeatherContract.WeatherEntry.isMergeUri(uri)) {
+                    return mergeWeather(db, values);
                 }
-                getContext().getContentResolver().notifyChange(uri, null);
+                int returnCount = insertWeatherRows(db, values);
+                notifyChange(uri);
                 return returnCount;
             default:
                 return super.bulkInsert(uri, values);
         }
     }
 
+    /**
+     * Inserts the weather rows in one transaction, through one compiled statement for the whole
+     * batch rather than having db.insert build the SQL and a new statement for every row.
+     *
+     * @return the number of rows inserted
+     */
+    static int insertWeatherRows(SQLiteDatabase db, ContentValues[] values) {
+        beginWriteTransaction(db);
+        int returnCount = 0;
+        SQLiteStatement insertStatement = db.compileStatement(SQL_INSERT_WEATHER);
+        try {
+            Time normalizer = new Time();
+            for (ContentValues value : values) {
+                long _id = insertWeather(insertStatement, value, normalizer);
+                if (_id != -1) {
+                    returnCount++;
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            insertStatement.close();
+            db.endTransaction();
+        }
+        return returnCount;
+    }
+
+    /**
+     * Starts a write transaction that doesn't lock out readers.  Together with write-ahead
+     * logging (see WeatherDbHelper) queries keep running against the last committed data
+     * while the transaction is open.
+     */
+    private static void beginWriteTransaction(SQLiteDatabase db) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            db.beginTransactionNonExclusive();
+        } else {
+            db.beginTransaction();
+        }
+    }
+
+    /**
+     * Binds the weather values straight onto the compiled insert statement and runs it.  The
+     * date is normalized on the way, reusing the given Time.
+     *
+     * @return the row ID of the inserted row, or -1 if the row could not be inserted.
+     */
+    private static long insertWeather(SQLiteStatement statement, ContentValues value,
+                                      Time normalizer) {
+        statement.clearBindings();
+        for (int i = 0; i < WEATHER_INSERT_COLUMNS.length; i++) {
+            String column = WEATHER_INSERT_COLUMNS[i];
+            Object columnValue = value.get(column);
+            int bindIndex = i + 1;
+            if (columnValue == null) {
+                statement.bindNull(bindIndex);
+            } else if (WeatherContract.WeatherEntry.COLUMN_DATE.equals(column)) {
+                long date = ((Number) columnValue).longValue();
+                long normalizedDate = normalizeDate(date, normalizer);
+                if (normalizedDate != date) {
+                    // hand the stored value back to the caller, like insert does
+                    value.put(column, normalizedDate);
+                }
+                statement.bindLong(bindIndex, normalizedDate);
+            } else if (columnValue instanceof Double || columnValue instanceof Float) {
+                statement.bindDouble(bindIndex, ((Number) columnValue).doubleValue());
+            } else if (columnValue instanceof Number) {
+                statement.bindLong(bindIndex, ((Number) columnValue).longValue());
+            } else {
+                statement.bindString(bindIndex, columnValue.toString());
+            }
+        }
+        try {
+            return statement.executeInsert();
+        } catch (SQLiteConstraintException e) {
+            // a required column is missing, db.insert would have returned -1 as well
+            Log.e(LOG_TAG, "Failed to insert weather row " + value, e);
+            return -1;
+        }
+    }
+
+    /**
+     * Same as {@link WeatherContract#normalizeDate(long)}, without a new Time for every call.
+     */
+    private static long normalizeDate(long startDate, Time time) {
+        time.set(startDate);
+        int julianDay = Time.getJulianDay(startDate, time.gmtoff);
+        return time.setJulianDay(julianDay);
+    }
+
+    /**
+     * Merges the given weather rows with the stored ones.  A row is only written when no row
+     * exists yet for its date and location, or when one of its values differs from the stored
+     * row, and only the weather/[location]/[date] URIs of written rows are notified.
+     *
+     * @return the number of rows written.  The remaining rows were unchanged.
+     */
+    private int mergeWeather(SQLiteDatabase db, ContentValues[] values) {
+        final String[] selectionColumns = new String[]{
+                WeatherContract.WeatherEntry._ID,
+                WeatherContract.WeatherEntry.COLUMN_DATE,
+                WeatherContract.WeatherEntry.COLUMN_LOC_KEY,
+                WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+                WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
+                WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+                WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+                WeatherContract.WeatherEntry.COLUMN_HUMIDITY,
+                WeatherContract.WeatherEntry.COLUMN_PRESSURE,
+                WeatherContract.WeatherEntry.COLUMN_WIND_SPEED,
+                WeatherContract.WeatherEntry.COLUMN_DEGREES
+        };
+        final String rowSelection = WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ? AND " +
+                WeatherContract.WeatherEntry.COLUMN_DATE + " = ?";
+
+        ArrayList<Uri> changedUris = new ArrayList<Uri>();
+        LongSparseArray<String> locationSettings = new LongSparseArray<String>();
+        int changedCount = 0;
+
+        beginWriteTransaction(db);
+        SQLiteStatement insertStatement = db.compileStatement(SQL_INSERT_WEATHER);
+        try {
+            Time normalizer = new Time();
+            for (ContentValues value : values) {
+                Long locationId = value.getAsLong(WeatherContract.WeatherEntry.COLUMN_LOC_KEY);
+                Long rawDate = value.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+                if (locationId == null || rawDate == null) {
+                    continue;
+                }
+                long date = normalizeDate(rawDate, normalizer);
+                if (date != rawDate) {
+                    value.put(WeatherContract.WeatherEntry.COLUMN_DATE, date);
+                }
+
+                boolean written;
+                Cursor existing = db.query(WeatherContract.WeatherEntry.TABLE_NAME,
+                        selectionColumns, rowSelection,
+                        new String[]{locationId.toString(), Long.toString(date)},
+                        null, null, null);
+                try {
+                    if (!existing.moveToFirst()) {
+                        written = insertWeather(insertStatement, value, normalizer) != -1;
+                    } else if (!matchesCurrentRow(existing, value)) {
+                        written = db.update(WeatherContract.WeatherEntry.TABLE_NAME, value,
+                                WeatherContract.WeatherEntry._ID + " = ?",
+                                new String[]{existing.getString(0)}) > 0;
+                    } else {
+                        written = false;
+                    }
+                } finally {
+                    existing.close();
+                }
+
+                if (written) {
+                    changedCount++;
+                    String locationSetting = locationSettings.get(locationId);
+                    if (locationSetting == null) {
+                        locationSetting = getLocationSetting(db, locationId);
+                        locationSettings.put(locationId, locationSetting);
+                    }
+                    if (locationSetting != null) {
+                        changedUris.add(WeatherContract.WeatherEntry.buildWeatherLocationWithDate(
+                                locationSetting, date));
+                    }
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            insertStatement.close();
+            db.endTransaction();
+        }
+
+        Log.d(LOG_TAG, "Merged " + values.length + " weather rows: " + changedCount +
+                " changed, " + (values.length - changedCount) + " unchanged");
+        for (Uri changedUri : changedUris) {
+            notifyChange(changedUri);
+        }
+        return changedCount;
+    }
+
+    /**
+     * Returns whether every value in the ContentValues equals the matching column of the
+     * cursor's current row.  Numbers are compared numerically, since SQLite hands REAL columns
+     * back as doubles whatever type went in.
+     */
+    private static boolean matchesCurrentRow(Cursor cursor, ContentValues values) {
+        for (Map.Entry<String, Object> entry : values.valueSet()) {
+            int index = cursor.getColumnIndex(entry.getKey());
+            if (index == -1) {
+                // not a column we compare, so assume it changed
+                return false;
+            }
+            Object value = entry.getValue();
+            if (value == null) {
+                if (!cursor.isNull(index)) return false;
+            } else if (value instanceof Number) {
+                if (cursor.isNull(index)
+                        || cursor.getDouble(index) != ((Number) value).doubleValue()) {
+                    return false;
+                }
+            } else if (!value.toString().equals(cursor.getString(index))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String getLocationSetting(SQLiteDatabase db, long locationId) {
+        Cursor cursor = db.query(WeatherContract.LocationEntry.TABLE_NAME,
+                new String[]{WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING},
+                WeatherContract.LocationEntry._ID + " = ?",
+                new String[]{Long.toString(locationId)},
+                null, null, null);
+        try {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Runs the whole batch in one transaction, and sends the change notifications of every
+     * operation in it as a single burst once the batch is done.
+     */
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        synchronized (mNotifyLock) {
+            mBatchDepth++;
+        }
+        beginWriteTransaction(db);
+        try {
+            ContentProviderResult[] results = super.applyBatch(operations);
+            db.setTransactionSuccessful();
+            return results;
+        } finally {
+            db.endTransaction();
+            // the operations dropped the snapshots before the batch was committed, and one may
+            // have been loaded from the old data since
+            ForecastSnapshot.invalidate();
+            boolean flushNow;
+            synchronized (mNotifyLock) {
+                flushNow = --mBatchDepth == 0;
+            }
+            if (flushNow) {
+                flushNotifications();
+            }
+        }
+    }
+
+    /**
+     * Queues a change notification for the uri.  It goes out when the debounce window closes,
+     * or at the end of the enclosing applyBatch.  The forecast snapshots are dropped right away.
+     */
+    private void notifyChange(Uri uri) {
+        ForecastSnapshot.invalidate();
+        sNotificationsRequested.incrementAndGet();
+        synchronized (mNotifyLock) {
+            long now = SystemClock.uptimeMillis();
+            if (mPendingNotifications.isEmpty()) {
+                mFirstPendingNotificationTime = now;
+            }
+            mPendingNotifications.add(uri);
+            if (mBatchDepth > 0) {
+                return;
+            }
+            long flushAt = Math.min(now + NOTIFY_DEBOUNCE_MS,
+                    mFirstPendingNotificationTime + NOTIFY_MAX_DELAY_MS);
+            mNotifyHandler.removeCallbacks(mFlushNotifications);
+            mNotifyHandler.postAtTime(mFlushNotifications, flushAt);
+        }
+    }
+
+    private void flushNotifications() {
+        ArrayList<Uri> pending;
+        synchronized (mNotifyLock) {
+            mNotifyHandler.removeCallbacks(mFlushNotifications);
+            if (mPendingNotifications.isEmpty()) {
+                return;
+            }
+            pending = new ArrayList<Uri>(mPendingNotifications);
+            mPendingNotifications.clear();
+        }
+
+        // A notification for a uri also reaches every observer of its descendants, so there is
+        // no point in also notifying a uri whose ancestor is already in the burst.
+        int dispatched = 0;
+        for (Uri uri : pending) {
+            if (hasPendingAncestor(uri, pending)) {
+                continue;
+            }
+            getContext().getContentResolver().notifyChange(uri, null);
+            dispatched++;
+        }
+        sNotificationsDispatched.addAndGet(dispatched);
+        Log.d(LOG_TAG, "Dispatched " + dispatched + " of " + pending.size() +
+                " pending change notifications, " + sQueries.get() + " queries served so far");
+    }
+
+    private static boolean hasPendingAncestor(Uri uri, List<Uri> pending) {
+        List<String> segments = uri.getPathSegments();
+        for (Uri other : pending) {
+            if (other == uri || !TextUtils.equals(other.getAuthority(), uri.getAuthority())) {
+                continue;
+            }
+            List<String> otherSegments = other.getPathSegments();
+            if (otherSegments.size() < segments.size()
+                    && segments.subList(0, otherSegments.size()).equals(otherSegments)) {
+                return true;
+            }
+            if (otherSegments.equals(segments) && pending.indexOf(other) < pending.indexOf(uri)) {
+                // same path with a different query, the first one covers it
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static long getNotificationsRequested() {
+        return sNotificationsRequested.get();
+    }
+
+    public static long getNotificationsDispatched() {
+        return sNotificationsDispatched.get();
+    }
+
+    public static long getQueryCount() {
+        return sQueries.get();
+    }
+
     // You do not need to call this method. This is a method specifically to assist the testing
     // framework in running smoothly. You can read more at:
     // http://developer.android.com/reference/android/content/ContentProvider.html#shutdown()
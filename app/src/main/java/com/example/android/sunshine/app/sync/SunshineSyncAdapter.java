@@ -22,6 +22,7 @@ import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.preference.PreferenceManager;
 import android.support.annotation.IntDef;
 import android.support.v4.app.NotificationCompat;
@@ -34,33 +35,36 @@ import com.example.android.sunshine.app.BuildConfig;
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.ForecastSnapshot;
 import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherProvider;
 import com.example.android.sunshine.app.muzei.WeatherMuzeiSource;
+import com.example.android.sunshine.app.wear.IconAssetCache;
+import com.example.android.sunshine.app.wear.WearRefreshCoalescer;
+import com.example.android.sunshine.app.wear.WearableNotifier;
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.api.GoogleApiClient;
-import com.google.android.gms.common.api.ResultCallbacks;
-import com.google.android.gms.common.api.Status;
-import com.google.android.gms.wearable.Asset;
-import com.google.android.gms.wearable.DataApi;
-import com.google.android.gms.wearable.PutDataMapRequest;
-import com.google.android.gms.wearable.PutDataRequest;
 import com.google.android.gms.wearable.Wearable;
 
-import org.json.JSONArray;
 import org.json.JSONException;
-import org.json.JSONObject;
 
-import java.io.BufferedReader;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.net.HttpURLConnection;
 import java.net.URL;
-import java.util.Vector;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements GoogleApiClient.ConnectionCallbacks, GoogleApiClient.OnConnectionFailedListener {
 
@@ -74,20 +78,10 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
     public static final int SYNC_FLEXTIME = SYNC_INTERVAL/3;
     private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
     private static final int WEATHER_NOTIFICATION_ID = 3004;
-
-
-    private static final String[] NOTIFY_WEATHER_PROJECTION = new String[] {
-            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
-            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC
-    };
-
-    // these indices must match the projection
-    private static final int INDEX_WEATHER_ID = 0;
-    private static final int INDEX_MAX_TEMP = 1;
-    private static final int INDEX_MIN_TEMP = 2;
-    private static final int INDEX_SHORT_DESC = 3;
+    // The preferred location plus the most recently used ones are refreshed on every sync,
+    // so switching back to one of them shows its forecast straight from the cache.
+    private static final int MAX_SYNCED_LOCATIONS = 5;
+    private static final int MAX_CONCURRENT_FETCHES = 3;
 
 
     @Retention(RetentionPolicy.SOURCE)
@@ -100,6 +94,9 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
     public static final int LOCATION_STATUS_UNKNOWN = 3;
     public static final int LOCATION_STATUS_INVALID = 4;
 
+    // Provider query count when the last sync started, see onPerformSync
+    private static long sQueryCountAtLastSync;
+
     GoogleApiClient mGoogleApiClient;
 
     public SunshineSyncAdapter(Context context, boolean autoInitialize) {
@@ -119,77 +116,229 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
         Log.d(LOG_TAG, "Google Api Connected!");
     }
 
-    private void notifyWearables() {
-        if(mGoogleApiClient == null || !mGoogleApiClient.isConnected()) {
-            Log.e(LOG_TAG, "Not connected :(");
-            return;
-        }
-
-        //Get weather information
-        String locationQuery = Utility.getPreferredLocation(getContext());
-        Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(locationQuery, System.currentTimeMillis());
-        Cursor cursor = getContext().getContentResolver().query(weatherUri, NOTIFY_WEATHER_PROJECTION, null, null, null);
-        if (cursor == null || !cursor.moveToFirst())
-            return;
-
-        //Send data to wearable
-        Log.d(LOG_TAG, "Sending data to wearables...");
-        int weatherId = cursor.getInt(INDEX_WEATHER_ID);
-        String highTemp = Utility.formatTemperature(getContext(), cursor.getDouble(INDEX_MAX_TEMP));
-        String lowTemp = Utility.formatTemperature(getContext(), cursor.getDouble(INDEX_MIN_TEMP));
-        int iconId = Utility.getIconResourceForWeatherCondition(weatherId);
-
-        Bitmap iconBitmap = BitmapFactory.decodeResource(getContext().getResources(), iconId);
-
-        PutDataMapRequest mapRequest = PutDataMapRequest.create("/sunshine-temp-update");
-        mapRequest.getDataMap().putString("high-temp", highTemp);
-        mapRequest.getDataMap().putString("low-temp", lowTemp);
-        mapRequest.getDataMap().putAsset("icon", createAssetFromBitmap(iconBitmap));
-        mapRequest.getDataMap().putLong("time", System.currentTimeMillis());
-
-        PutDataRequest request = mapRequest.asPutDataRequest();
-        Wearable.DataApi.putDataItem(mGoogleApiClient, request).setResultCallback(new ResultCallbacks<DataApi.DataItemResult>() {
-            @Override
-            public void onSuccess(DataApi.DataItemResult dataItemResult) {
-                Log.d(LOG_TAG, "Success!");
-            }
+    @Override
+    public void onConnectionSuspended(int i) {
 
-            @Override
-            public void onFailure(Status status) {
-                Log.d(LOG_TAG, "Failure!");
-            }
-        });
     }
 
     @Override
-    public void onConnectionSuspended(int i) {
+    public void onConnectionFailed(ConnectionResult connectionResult) {
 
     }
 
     @Override
-    public void onConnectionFailed(ConnectionResult connectionResult) {
+    public void onPerformSync(Account account, Bundle extras, String authority, ContentProviderClient provider, SyncResult syncResult) {
+        Log.d(LOG_TAG, "Starting sync");
+        // Most of the queries the provider served since the last sync are the requeries its
+        // change notifications caused.
+        long queryCount = WeatherProvider.getQueryCount();
+        long notificationsRequested = WeatherProvider.getNotificationsRequested();
+        Log.d(LOG_TAG, (queryCount - sQueryCountAtLastSync) + " provider queries since last sync, "
+                + WeatherProvider.getNotificationsDispatched() + " of "
+                + notificationsRequested + " change notifications dispatched overall, "
+                + ForecastSnapshot.getHitCount() + " forecast snapshot hits and "
+                + ForecastSnapshot.getMissCount() + " misses");
+        sQueryCountAtLastSync = queryCount;
+        String preferredLocation = Utility.getPreferredLocation(getContext());
+        List<SyncLocation> locations = getLocationsToSync(preferredLocation);
+
+        // OWM returns daily forecasts based upon the local time of the city that is being
+        // asked for, which means that we need to know the GMT offset to translate this data
+        // properly.
+
+        // Since this data is also sent in-order and the first day is always the
+        // current day, we're going to take advantage of that to get a nice
+        // normalized UTC date for all of our weather.
+
+        Time dayTime = new Time();
+        dayTime.setToNow();
+
+        // we start at the day returned by local time. Otherwise this is a mess.
+        final int julianStartDay = Time.getJulianDay(System.currentTimeMillis(), dayTime.gmtoff);
+
+        // now we work exclusively in UTC
+        dayTime = new Time();
+
+        // Fetch and parse every saved location concurrently, then write them all at once.
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(locations.size(), MAX_CONCURRENT_FETCHES));
+        List<Future<ForecastJsonParser.Forecast>> fetches =
+                new ArrayList<Future<ForecastJsonParser.Forecast>>(locations.size());
+        for (final SyncLocation location : locations) {
+            fetches.add(executor.submit(new Callable<ForecastJsonParser.Forecast>() {
+                @Override
+                public ForecastJsonParser.Forecast call() throws IOException, JSONException {
+                    return fetchForecast(location, julianStartDay);
+                }
+            }));
+        }
+        executor.shutdown();
+
+        ArrayList<ContentValues> cvList = new ArrayList<ContentValues>();
+        ArrayList<SyncLocation> changedLocations = new ArrayList<SyncLocation>();
+        @LocationStatus int preferredStatus = LOCATION_STATUS_UNKNOWN;
+        for (int i = 0; i < locations.size(); i++) {
+            SyncLocation location = locations.get(i);
+            String locationQuery = location.setting;
+            @LocationStatus int status;
+            try {
+                ForecastJsonParser.Forecast forecast = fetches.get(i).get();
+                if (forecast.unchanged) {
+                    // Nothing new for this location, keep what we have.
+                    status = LOCATION_STATUS_OK;
+                } else {
+                    status = addForecast(locationQuery, forecast, cvList);
+                    if (status == LOCATION_STATUS_OK) {
+                        location.etag = forecast.etag;
+                        location.lastModified = forecast.lastModified;
+                        location.contentHash = forecast.contentHash;
+                        changedLocations.add(location);
+                    }
+                }
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                Log.e(LOG_TAG, "Error syncing " + locationQuery, cause);
+                // If the code didn't successfully get the weather data, there's no point in
+                // attempting to parse it.
+                status = cause instanceof JSONException
+                        ? LOCATION_STATUS_SERVER_INVALID : LOCATION_STATUS_SERVER_DOWN;
+            } catch (InterruptedException e) {
+                Log.d(LOG_TAG, "Sync interrupted");
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (locationQuery.equals(preferredLocation)) {
+                preferredStatus = status;
+            }
+        }
+
+        // add to database.  When every location came back unchanged there is nothing to
+        // write, and none of the widgets, Muzei, the notification or the wearables need to hear
+        // about it either.
+        if ( cvList.size() > 0 ) {
+            ContentValues[] cvArray = new ContentValues[cvList.size()];
+            cvList.toArray(cvArray);
+            int changed = getContext().getContentResolver().bulkInsert(
+                    WeatherContract.WeatherEntry.buildWeatherMergeUri(), cvArray);
+            Log.d(LOG_TAG, changed + " of " + cvArray.length + " days changed");
+
+            // only remember the validators once the forecast they describe is stored
+            for (SyncLocation location : changedLocations) {
+                storeValidators(location);
+            }
 
+            // delete old data so we don't build up an endless history
+            getContext().getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI,
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?",
+                    new String[] {Long.toString(dayTime.setJulianDay(julianStartDay-1))});
+
+            // everything below reads the preferred location's forecast from the snapshot
+            ForecastSnapshot.rebuild(getContext(), preferredLocation);
+
+            long tailStart = SystemClock.elapsedRealtime();
+            updateWidgets();
+            updateMuzei();
+            notifyWeather();
+            WearableNotifier.notifyWearables(getContext(), mGoogleApiClient);
+            Log.d(LOG_TAG, "Widgets, Muzei, notification and wearables updated in "
+                    + (SystemClock.elapsedRealtime() - tailStart) + " ms, "
+                    + IconAssetCache.getHitCount() + " wearable icon cache hits and "
+                    + IconAssetCache.getMissCount() + " misses");
+        }
+
+        Log.d(LOG_TAG, "Sync Complete. " + cvList.size() + " Inserted for "
+                + changedLocations.size() + " of " + locations.size() + " locations, "
+                + (WeatherProvider.getNotificationsRequested() - notificationsRequested)
+                + " change notifications requested");
+        setLocationStatus(getContext(), preferredStatus);
+        if (preferredStatus == LOCATION_STATUS_OK) {
+            // what the watch is shown is now fresh, whether or not it changed
+            new WearRefreshCoalescer(getContext()).onSyncCompleted(System.currentTimeMillis());
+        }
     }
 
-    private static Asset createAssetFromBitmap(Bitmap bitmap) {
-        final ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
-        bitmap.compress(Bitmap.CompressFormat.PNG, 100, byteStream);
-        return Asset.createFromBytes(byteStream.toByteArray());
+    /**
+     * A location to refresh, along with the validators of the last forecast stored for it.
+     */
+    private static final class SyncLocation {
+        final String setting;
+        String etag;
+        String lastModified;
+        String contentHash;
+
+        SyncLocation(String setting) {
+            this.setting = setting;
+        }
     }
 
+    /**
+     * Returns the locations to refresh in this sync: the preferred location first,
+     * followed by the most recently added locations already stored in the database.
+     */
+    private List<SyncLocation> getLocationsToSync(String preferredLocation) {
+        LinkedHashMap<String, SyncLocation> locations = new LinkedHashMap<String, SyncLocation>();
+        locations.put(preferredLocation, new SyncLocation(preferredLocation));
 
-    @Override
-    public void onPerformSync(Account account, Bundle extras, String authority, ContentProviderClient provider, SyncResult syncResult) {
-        Log.d(LOG_TAG, "Starting sync");
-        String locationQuery = Utility.getPreferredLocation(getContext());
+        Cursor locationCursor = getContext().getContentResolver().query(
+                WeatherContract.LocationEntry.CONTENT_URI,
+                new String[]{
+                        WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
+                        WeatherContract.LocationEntry.COLUMN_ETAG,
+                        WeatherContract.LocationEntry.COLUMN_LAST_MODIFIED,
+                        WeatherContract.LocationEntry.COLUMN_CONTENT_HASH
+                },
+                null,
+                null,
+                WeatherContract.LocationEntry._ID + " DESC");
+        if (locationCursor != null) {
+            while (locationCursor.moveToNext()) {
+                String setting = locationCursor.getString(0);
+                SyncLocation location = locations.get(setting);
+                if (location == null) {
+                    if (locations.size() >= MAX_SYNCED_LOCATIONS) {
+                        continue;
+                    }
+                    location = new SyncLocation(setting);
+                    locations.put(setting, location);
+                }
+                location.etag = locationCursor.getString(1);
+                location.lastModified = locationCursor.getString(2);
+                location.contentHash = locationCursor.getString(3);
+            }
+            locationCursor.close();
+        }
+        return new ArrayList<SyncLocation>(locations.values());
+    }
 
-        // These two need to be declared outside the try/catch
-        // so that they can be closed in the finally block.
-        HttpURLConnection urlConnection = null;
-        BufferedReader reader = null;
+    /**
+     * Stores the validators of the forecast just written for a location.
+     */
+    private void storeValidators(SyncLocation location) {
+        ContentValues validatorValues = new ContentValues();
+        validatorValues.put(WeatherContract.LocationEntry.COLUMN_ETAG, location.etag);
+        validatorValues.put(WeatherContract.LocationEntry.COLUMN_LAST_MODIFIED, location.lastModified);
+        validatorValues.put(WeatherContract.LocationEntry.COLUMN_CONTENT_HASH, location.contentHash);
+        getContext().getContentResolver().update(WeatherContract.LocationEntry.CONTENT_URI,
+                validatorValues,
+                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                new String[]{location.setting});
+    }
 
-        // Will contain the raw JSON response as a string.
-        String forecastJsonStr = null;
+    /**
+     * Downloads and parses the forecast for one location.  Safe to call from any thread, it
+     * doesn't touch the database.
+     *
+     * The request is conditional on the validators stored for the location.  When the server
+     * answers 304, or sends back a body identical to the stored one, the returned forecast is
+     * flagged as unchanged.
+     */
+    private ForecastJsonParser.Forecast fetchForecast(SyncLocation location, int julianStartDay)
+            throws IOException, JSONException {
+        String locationQuery = location.setting;
+        // This needs to be declared outside the try
+        // so that it can be closed in the finally block.
+        HttpURLConnection urlConnection = null;
 
         String format = "json";
         String units = "metric";
@@ -220,231 +369,99 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
             // Create the request to OpenWeatherMap, and open the connection
             urlConnection = (HttpURLConnection) url.openConnection();
             urlConnection.setRequestMethod("GET");
+            if (location.etag != null) {
+                urlConnection.setRequestProperty("If-None-Match", location.etag);
+            }
+            if (location.lastModified != null) {
+                urlConnection.setRequestProperty("If-Modified-Since", location.lastModified);
+            }
             urlConnection.connect();
 
-            // Read the input stream into a String
+            if (urlConnection.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                ForecastJsonParser.Forecast forecast = new ForecastJsonParser.Forecast();
+                forecast.unchanged = true;
+                return forecast;
+            }
+
+            // Parse the forecast straight off the input stream.  An empty stream surfaces
+            // as an IOException, in which case the server is down as far as we're concerned.
             InputStream inputStream = urlConnection.getInputStream();
-            StringBuffer buffer = new StringBuffer();
             if (inputStream == null) {
-                // Nothing to do.
-                return;
-            }
-            reader = new BufferedReader(new InputStreamReader(inputStream));
-
-            String line;
-            while ((line = reader.readLine()) != null) {
-                // Since it's JSON, adding a newline isn't necessary (it won't affect parsing)
-                // But it does make debugging a *lot* easier if you print out the completed
-                // buffer for debugging.
-                buffer.append(line + "\n");
+                throw new IOException("No response for " + locationQuery);
             }
 
-            if (buffer.length() == 0) {
-                // Stream was empty.  No point in parsing.
-                setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-                return;
+            // Hash the body while it is being parsed, for servers that don't send validators.
+            MessageDigest digest = newContentDigest();
+            if (digest != null) {
+                inputStream = new DigestInputStream(inputStream, digest);
             }
-            forecastJsonStr = buffer.toString();
-            getWeatherDataFromJson(forecastJsonStr, locationQuery);
-        } catch (IOException e) {
-            Log.e(LOG_TAG, "Error ", e);
-            // If the code didn't successfully get the weather data, there's no point in attempting
-            // to parse it.
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-        } catch (JSONException e) {
-            Log.e(LOG_TAG, e.getMessage(), e);
-            e.printStackTrace();
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_INVALID);
+            ForecastJsonParser.Forecast forecast =
+                    new ForecastJsonParser(julianStartDay).parse(inputStream);
+            if (digest != null) {
+                // the parser stops at the end of the JSON object, hash whatever trails it too
+                byte[] skipBuffer = new byte[256];
+                while (inputStream.read(skipBuffer) != -1) {
+                    // keep reading
+                }
+                forecast.contentHash = toHex(digest.digest());
+            }
+            forecast.etag = urlConnection.getHeaderField("ETag");
+            forecast.lastModified = urlConnection.getHeaderField("Last-Modified");
+            forecast.unchanged = forecast.contentHash != null
+                    && forecast.contentHash.equals(location.contentHash);
+            return forecast;
         } finally {
             if (urlConnection != null) {
                 urlConnection.disconnect();
             }
-            if (reader != null) {
-                try {
-                    reader.close();
-                } catch (final IOException e) {
-                    Log.e(LOG_TAG, "Error closing stream", e);
-                }
-            }
         }
-        return;
     }
 
-    /**
-     * Take the String representing the complete forecast in JSON Format and
-     * pull out the data we need to construct the Strings needed for the wireframes.
-     *
-     * Fortunately parsing is easy:  constructor takes the JSON string and converts it
-     * into an Object hierarchy for us.
-     */
-    private void getWeatherDataFromJson(String forecastJsonStr,
-                                        String locationSetting)
-            throws JSONException {
-
-        // Now we have a String representing the complete forecast in JSON Format.
-        // Fortunately parsing is easy:  constructor takes the JSON string and converts it
-        // into an Object hierarchy for us.
-
-        // These are the names of the JSON objects that need to be extracted.
-
-        // Location information
-        final String OWM_CITY = "city";
-        final String OWM_CITY_NAME = "name";
-        final String OWM_COORD = "coord";
-
-        // Location coordinate
-        final String OWM_LATITUDE = "lat";
-        final String OWM_LONGITUDE = "lon";
-
-        // Weather information.  Each day's forecast info is an element of the "list" array.
-        final String OWM_LIST = "list";
-
-        final String OWM_PRESSURE = "pressure";
-        final String OWM_HUMIDITY = "humidity";
-        final String OWM_WINDSPEED = "speed";
-        final String OWM_WIND_DIRECTION = "deg";
-
-        // All temperatures are children of the "temp" object.
-        final String OWM_TEMPERATURE = "temp";
-        final String OWM_MAX = "max";
-        final String OWM_MIN = "min";
-
-        final String OWM_WEATHER = "weather";
-        final String OWM_DESCRIPTION = "main";
-        final String OWM_WEATHER_ID = "id";
-
-        final String OWM_MESSAGE_CODE = "cod";
-
+    private static MessageDigest newContentDigest() {
         try {
-            JSONObject forecastJson = new JSONObject(forecastJsonStr);
-
-            // do we have an error?
-            if ( forecastJson.has(OWM_MESSAGE_CODE) ) {
-                int errorCode = forecastJson.getInt(OWM_MESSAGE_CODE);
-
-                switch (errorCode) {
-                    case HttpURLConnection.HTTP_OK:
-                        break;
-                    case HttpURLConnection.HTTP_NOT_FOUND:
-                        setLocationStatus(getContext(), LOCATION_STATUS_INVALID);
-                        return;
-                    default:
-                        setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-                        return;
-                }
-            }
-
-            JSONArray weatherArray = forecastJson.getJSONArray(OWM_LIST);
-
-            JSONObject cityJson = forecastJson.getJSONObject(OWM_CITY);
-            String cityName = cityJson.getString(OWM_CITY_NAME);
-
-            JSONObject cityCoord = cityJson.getJSONObject(OWM_COORD);
-            double cityLatitude = cityCoord.getDouble(OWM_LATITUDE);
-            double cityLongitude = cityCoord.getDouble(OWM_LONGITUDE);
-
-            long locationId = addLocation(locationSetting, cityName, cityLatitude, cityLongitude);
-
-            // Insert the new weather information into the database
-            Vector<ContentValues> cVVector = new Vector<ContentValues>(weatherArray.length());
-
-            // OWM returns daily forecasts based upon the local time of the city that is being
-            // asked for, which means that we need to know the GMT offset to translate this data
-            // properly.
-
-            // Since this data is also sent in-order and the first day is always the
-            // current day, we're going to take advantage of that to get a nice
-            // normalized UTC date for all of our weather.
-
-            Time dayTime = new Time();
-            dayTime.setToNow();
-
-            // we start at the day returned by local time. Otherwise this is a mess.
-            int julianStartDay = Time.getJulianDay(System.currentTimeMillis(), dayTime.gmtoff);
-
-            // now we work exclusively in UTC
-            dayTime = new Time();
-
-            for(int i = 0; i < weatherArray.length(); i++) {
-                // These are the values that will be collected.
-                long dateTime;
-                double pressure;
-                int humidity;
-                double windSpeed;
-                double windDirection;
-
-                double high;
-                double low;
-
-                String description;
-                int weatherId;
-
-                // Get the JSON object representing the day
-                JSONObject dayForecast = weatherArray.getJSONObject(i);
-
-                // Cheating to convert this to UTC time, which is what we want anyhow
-                dateTime = dayTime.setJulianDay(julianStartDay+i);
-
-                pressure = dayForecast.getDouble(OWM_PRESSURE);
-                humidity = dayForecast.getInt(OWM_HUMIDITY);
-                windSpeed = dayForecast.getDouble(OWM_WINDSPEED);
-                windDirection = dayForecast.getDouble(OWM_WIND_DIRECTION);
-
-                // Description is in a child array called "weather", which is 1 element long.
-                // That element also contains a weather code.
-                JSONObject weatherObject =
-                        dayForecast.getJSONArray(OWM_WEATHER).getJSONObject(0);
-                description = weatherObject.getString(OWM_DESCRIPTION);
-                weatherId = weatherObject.getInt(OWM_WEATHER_ID);
-
-                // Temperatures are in a child object called "temp".  Try not to name variables
-                // "temp" when working with temperature.  It confuses everybody.
-                JSONObject temperatureObject = dayForecast.getJSONObject(OWM_TEMPERATURE);
-                high = temperatureObject.getDouble(OWM_MAX);
-                low = temperatureObject.getDouble(OWM_MIN);
-
-                ContentValues weatherValues = new ContentValues();
-
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE, dateTime);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, humidity);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, pressure);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, windSpeed);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, windDirection);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, high);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, low);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, description);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, weatherId);
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            return null;
+        }
+    }
 
-                cVVector.add(weatherValues);
-            }
+    private static String toHex(byte[] bytes) {
+        final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+            hex[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xf];
+        }
+        return new String(hex);
+    }
 
-            int inserted = 0;
-            // add to database
-            if ( cVVector.size() > 0 ) {
-                ContentValues[] cvArray = new ContentValues[cVVector.size()];
-                cVVector.toArray(cvArray);
-                getContext().getContentResolver().bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI, cvArray);
-
-                // delete old data so we don't build up an endless history
-                getContext().getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI,
-                        WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?",
-                        new String[] {Long.toString(dayTime.setJulianDay(julianStartDay-1))});
-
-                updateWidgets();
-                updateMuzei();
-                notifyWeather();
-                notifyWearables();
-            }
+    /**
+     * Adds the location of a parsed forecast to the database and appends its weather rows,
+     * keyed to that location, to the given list.
+     *
+     * @return the location status this forecast results in.
+     */
+    private @LocationStatus int addForecast(String locationSetting,
+                                            ForecastJsonParser.Forecast forecast,
+                                            List<ContentValues> cvList) {
+        // do we have an error?
+        switch (forecast.code) {
+            case HttpURLConnection.HTTP_OK:
+                break;
+            case HttpURLConnection.HTTP_NOT_FOUND:
+                return LOCATION_STATUS_INVALID;
+            default:
+                return LOCATION_STATUS_SERVER_DOWN;
+        }
 
-            Log.d(LOG_TAG, "Sync Complete. " + cVVector.size() + " Inserted");
-            setLocationStatus(getContext(), LOCATION_STATUS_OK);
+        long locationId = addLocation(locationSetting, forecast.cityName,
+                forecast.cityLatitude, forecast.cityLongitude);
 
-        } catch (JSONException e) {
-            Log.e(LOG_TAG, e.getMessage(), e);
-            e.printStackTrace();
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_INVALID);
+        for (ContentValues weatherValues : forecast.days) {
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
+            cvList.add(weatherValues);
         }
+        return LOCATION_STATUS_OK;
     }
 
     private void updateWidgets() {
@@ -480,18 +497,14 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
 
             if (System.currentTimeMillis() - lastSync >= DAY_IN_MILLIS) {
                 // Last sync was more than 1 day ago, let's send a notification with the weather.
-                String locationQuery = Utility.getPreferredLocation(context);
-
-                Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(locationQuery, System.currentTimeMillis());
-
-                // we'll query our contentProvider, as always
-                Cursor cursor = context.getContentResolver().query(weatherUri, NOTIFY_WEATHER_PROJECTION, null, null, null);
+                ForecastSnapshot forecast = ForecastSnapshot.get(context);
+                int today = forecast.indexOfDate(System.currentTimeMillis());
 
-                if (cursor.moveToFirst()) {
-                    int weatherId = cursor.getInt(INDEX_WEATHER_ID);
-                    double high = cursor.getDouble(INDEX_MAX_TEMP);
-                    double low = cursor.getDouble(INDEX_MIN_TEMP);
-                    String desc = cursor.getString(INDEX_SHORT_DESC);
+                if (today != -1) {
+                    int weatherId = forecast.getWeatherId(today);
+                    double high = forecast.getHigh(today);
+                    double low = forecast.getLow(today);
+                    String desc = forecast.getDescription(today);
 
                     int iconId = Utility.getIconResourceForWeatherCondition(weatherId);
                     Resources resources = context.getResources();
@@ -567,7 +580,6 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter implements
                     editor.putLong(lastNotificationKey, System.currentTimeMillis());
                     editor.commit();
                 }
-                cursor.close();
             }
         }
     }
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.wear;
+
+import android.text.format.Time;
+
+import com.example.android.sunshine.app.data.ForecastSnapshot;
+
+/**
+ * The multi-day forecast sent to the watch, packed into a few bytes instead of a string and an
+ * icon per day.  The watch module decodes the same layout, so the two must change together:
+ * <pre>
+ *   version      u8   VERSION
+ *   flags        u8   FLAG_METRIC if the temperatures are in Celsius
+ *   first day    u16  days since the epoch of the first day
+ *   day count    u8   at most MAX_DAYS, one entry per consecutive day:
+ *     weather id u16  OpenWeatherMap condition id
+ *     high       s8   whole degrees in the user's units
+ *     low        s8   whole degrees in the user's units
+ * </pre>
+ * Multi-byte values are big-endian.
+ */
+public final class ForecastPayload {
+
+    static final int VERSION = 1;
+    static final int FLAG_METRIC = 1;
+    static final int MAX_DAYS = 7;
+
+    static final int HEADER_SIZE = 5;
+    static final int DAY_SIZE = 4;
+
+    private ForecastPayload() {
+    }
+
+    /**
+     * Packs up to MAX_DAYS days of the forecast, starting at the given index and stopping at
+     * the first gap in the dates.
+     *
+     * @return the payload, or null if there is no day to send
+     */
+    public static byte[] encode(ForecastSnapshot forecast, int first, boolean metric) {
+        int available = Math.min(forecast.getDayCount() - first, MAX_DAYS);
+        if (first < 0 || available <= 0) {
+            return null;
+        }
+        int[] weatherIds = new int[available];
+        double[] highs = new double[available];
+        double[] lows = new double[available];
+        Time time = new Time();
+        int firstDay = 0;
+        int count = 0;
+        for (; count < available; count++) {
+            long date = forecast.getDate(first + count);
+            time.set(date);
+            int day = Time.getJulianDay(date, time.gmtoff) - Time.EPOCH_JULIAN_DAY;
+            if (count == 0) {
+                firstDay = day;
+            } else if (day != firstDay + count) {
+                break;
+            }
+            weatherIds[count] = forecast.getWeatherId(first + count);
+            highs[count] = forecast.getHigh(first + count);
+            lows[count] = forecast.getLow(first + count);
+        }
+        return encode(firstDay, weatherIds, highs, lows, count, metric);
+    }
+
+    /**
+     * Packs consecutive days, with the temperatures in Celsius as they are stored.
+     */
+    static byte[] encode(int firstDay, int[] weatherIds, double[] highs, double[] lows,
+                         int count, boolean metric) {
+        count = Math.min(count, MAX_DAYS);
+        byte[] payload = new byte[HEADER_SIZE + count * DAY_SIZE];
+        payload[0] = VERSION;
+        payload[1] = (byte) (metric ? FLAG_METRIC : 0);
+        payload[2] = (byte) (firstDay >> 8);
+        payload[3] = (byte) firstDay;
+        payload[4] = (byte) count;
+        int offset = HEADER_SIZE;
+        for (int i = 0; i < count; i++) {
+            payload[offset] = (byte) (weatherIds[i] >> 8);
+            payload[offset + 1] = (byte) weatherIds[i];
+            payload[offset + 2] = (byte) toDegrees(highs[i], metric);
+            payload[offset + 3] = (byte) toDegrees(lows[i], metric);
+            offset += DAY_SIZE;
+        }
+        return payload;
+    }
+
+    /**
+     * Converts a stored temperature the way Utility.formatTemperature does, rounded to whole
+     * degrees and clamped to what fits in a signed byte.
+     */
+    static int toDegrees(double celsius, boolean metric) {
+        double temperature = metric ? celsius : celsius * 1.8 + 32;
+        long degrees = Math.round(temperature);
+        return (int) Math.max(Byte.MIN_VALUE, Math.min(Byte.MAX_VALUE, degrees));
+    }
+}
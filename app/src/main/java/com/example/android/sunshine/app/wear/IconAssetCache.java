@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.wear;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.SparseArray;
+
+import com.google.android.gms.wearable.Asset;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The weather icons as sent to the watch, encoded once per icon resource and kept for the life
+ * of the process.  There are only a handful of icons, so after the first push of each a push
+ * costs a lookup instead of decoding the resource and compressing it again.
+ * <p>
+ * Icons are scaled down to ICON_SIZE before they are encoded: the phone's drawables are meant
+ * for phone densities, and anything bigger than the watch draws is just more to send.
+ */
+public final class IconAssetCache {
+
+    // The watch draws its icon at 56dp, which is 112 pixels on the densest (xhdpi) watches.
+    // The watch scales down from there for anything less dense.
+    static final int ICON_SIZE = 112;
+
+    // Encoded icons by drawable resource id, guarded by itself
+    private static final SparseArray<byte[]> sEncoded = new SparseArray<byte[]>();
+
+    private static final AtomicLong sHits = new AtomicLong();
+    private static final AtomicLong sMisses = new AtomicLong();
+
+    private IconAssetCache() {
+    }
+
+    /**
+     * @return the icon as an asset for the Data Layer, or null if the resource couldn't be read
+     */
+    public static Asset getAsset(Resources resources, int iconResource) {
+        byte[] encoded = getEncoded(resources, iconResource);
+        return encoded != null ? Asset.createFromBytes(encoded) : null;
+    }
+
+    static byte[] getEncoded(Resources resources, int iconResource) {
+        if (iconResource == -1) {
+            return null;
+        }
+        synchronized (sEncoded) {
+            byte[] encoded = sEncoded.get(iconResource);
+            if (encoded != null) {
+                sHits.incrementAndGet();
+                return encoded;
+            }
+        }
+        sMisses.incrementAndGet();
+        // Two threads may both encode the same icon, which is harmless
+        byte[] encoded = encode(resources, iconResource, ICON_SIZE);
+        if (encoded != null) {
+            synchronized (sEncoded) {
+                sEncoded.put(iconResource, encoded);
+            }
+        }
+        return encoded;
+    }
+
+    /**
+     * Decodes the resource no bigger than needed, scales it to fit within size pixels and
+     * encodes it as a PNG.
+     */
+    static byte[] encode(Resources resources, int iconResource, int size) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeResource(resources, iconResource, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        options.inSampleSize = 1;
+        while (options.outWidth / (options.inSampleSize * 2) >= size
+                && options.outHeight / (options.inSampleSize * 2) >= size) {
+            options.inSampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        Bitmap bitmap = BitmapFactory.decodeResource(resources, iconResource, options);
+        if (bitmap == null) {
+            return null;
+        }
+
+        int longest = Math.max(bitmap.getWidth(), bitmap.getHeight());
+        if (longest > size) {
+            Bitmap scaled = Bitmap.createScaledBitmap(bitmap,
+                    bitmap.getWidth() * size / longest, bitmap.getHeight() * size / longest, true);
+            bitmap.recycle();
+            bitmap = scaled;
+        }
+
+        ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.PNG, 100, byteStream);
+        bitmap.recycle();
+        return byteStream.toByteArray();
+    }
+
+    public static long getHitCount() {
+        return sHits.get();
+    }
+
+    public static long getMissCount() {
+        return sMisses.get();
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.wear;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.support.annotation.IntDef;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sits between refresh requests from the watch and the sync adapter, so that a watch that asks
+ * again on every reconnect can't set off a network sync each time:
+ * <ul>
+ * <li>if the last successful sync is recent enough, the watch is answered from the database;</li>
+ * <li>otherwise a sync is requested, but at most one every MIN_REFRESH_INTERVAL, and every
+ * request in between is merged into that one.</li>
+ * </ul>
+ * The times are kept in a preferences file, as the listener service rarely lives long.
+ */
+public final class WearRefreshCoalescer {
+
+    // Data synced within this is answered from the database
+    static final long FRESH_INTERVAL = 1000 * 60 * 60;
+    // At most one sync is requested for the watch within this
+    static final long MIN_REFRESH_INTERVAL = 1000 * 60 * 10;
+
+    private static final String PREFS_NAME = "wear_refresh";
+    private static final String KEY_LAST_SYNC = "last-sync";
+    private static final String KEY_LAST_SYNC_REQUEST = "last-sync-request";
+
+    @Retention(RetentionPolicy.SOURCE)
+    @IntDef({ANSWER_FROM_DATABASE, REQUEST_SYNC, COALESCED})
+    public @interface Decision {}
+
+    public static final int ANSWER_FROM_DATABASE = 0;
+    public static final int REQUEST_SYNC = 1;
+    public static final int COALESCED = 2;
+
+    private static final Object sLock = new Object();
+
+    // Instrumentation: how the requests from the watch were handled
+    private static final AtomicLong sAnsweredFromDatabase = new AtomicLong();
+    private static final AtomicLong sSyncsRequested = new AtomicLong();
+    private static final AtomicLong sCoalesced = new AtomicLong();
+
+    private final SharedPreferences mPrefs;
+
+    public WearRefreshCoalescer(Context context) {
+        mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Decides what to do about a refresh request from the watch, and records it.
+     *
+     * @param now the current time, in milliseconds since the epoch
+     */
+    @Decision
+    public int onRefreshRequested(long now) {
+        synchronized (sLock) {
+            if (isWithin(now, mPrefs.getLong(KEY_LAST_SYNC, 0), FRESH_INTERVAL)) {
+                sAnsweredFromDatabase.incrementAndGet();
+                return ANSWER_FROM_DATABASE;
+            }
+            if (isWithin(now, mPrefs.getLong(KEY_LAST_SYNC_REQUEST, 0), MIN_REFRESH_INTERVAL)) {
+                sCoalesced.incrementAndGet();
+                return COALESCED;
+            }
+            mPrefs.edit().putLong(KEY_LAST_SYNC_REQUEST, now).apply();
+            sSyncsRequested.incrementAndGet();
+            return REQUEST_SYNC;
+        }
+    }
+
+    /**
+     * Called by the sync adapter once the preferred location is up to date.
+     */
+    public void onSyncCompleted(long now) {
+        synchronized (sLock) {
+            mPrefs.edit().putLong(KEY_LAST_SYNC, now).apply();
+        }
+    }
+
+    /**
+     * A time in the future means the clock was set back, and is treated as long ago.
+     */
+    private static boolean isWithin(long now, long then, long interval) {
+        return then > 0 && then <= now && now - then < interval;
+    }
+
+    public static long getAnsweredFromDatabaseCount() {
+        return sAnsweredFromDatabase.get();
+    }
+
+    public static long getSyncsRequestedCount() {
+        return sSyncsRequested.get();
+    }
+
+    public static long getCoalescedCount() {
+        return sCoalesced.get();
+    }
+}
@@ -3,10 +3,15 @@ package com.example.android.sunshine.app.wear;
 import android.util.Log;
 
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.api.GoogleApiClient;
 import com.google.android.gms.wearable.DataEvent;
 import com.google.android.gms.wearable.DataEventBuffer;
+import com.google.android.gms.wearable.Wearable;
 import com.google.android.gms.wearable.WearableListenerService;
 
+import java.util.concurrent.TimeUnit;
+
 /**
  * Created by
  * --Vatsal Bajpai on
@@ -17,19 +22,97 @@ public class WearService extends WearableListenerService {
 
     private static final String TAG = WearService.class.getSimpleName();
 
-    // path should be same as in watch module
+    // paths should be same as in watch module
     private static final String WEATHER_PATH = "/weather";
+    private static final String ICON_CACHE_PATH = "/sunshine-icon-cache";
+
+    private static final long CONNECT_TIMEOUT_SECONDS = 10;
 
     @Override
     public void onDataChanged(DataEventBuffer dataEvents) {
+        // However many requests came in together, they are one refresh
+        boolean refreshRequested = false;
+        boolean iconCacheChanged = false;
         for (DataEvent dataEvent : dataEvents) {
             if (dataEvent.getType() == DataEvent.TYPE_CHANGED) {
                 String path = dataEvent.getDataItem().getUri().getPath();
                 Log.d(TAG, path);
                 if (path.equals(WEATHER_PATH)) {
-                    SunshineSyncAdapter.syncImmediately(this);
+                    refreshRequested = true;
+                } else if (path.equals(ICON_CACHE_PATH)) {
+                    iconCacheChanged = true;
                 }
             }
         }
+        if (iconCacheChanged) {
+            resendIconIfMissing();
+        }
+        if (!refreshRequested) {
+            return;
+        }
+
+        switch (new WearRefreshCoalescer(this).onRefreshRequested(System.currentTimeMillis())) {
+            case WearRefreshCoalescer.ANSWER_FROM_DATABASE:
+                answerFromDatabase();
+                break;
+            case WearRefreshCoalescer.REQUEST_SYNC:
+                SunshineSyncAdapter.syncImmediately(this);
+                break;
+            case WearRefreshCoalescer.COALESCED:
+                Log.d(TAG, "Refresh merged into the sync already requested, "
+                        + WearRefreshCoalescer.getCoalescedCount() + " merged, "
+                        + WearRefreshCoalescer.getSyncsRequestedCount() + " syncs requested and "
+                        + WearRefreshCoalescer.getAnsweredFromDatabaseCount()
+                        + " answered from the database");
+                break;
+        }
+    }
+
+    /**
+     * Sends the watch what the database has, without a network call.  Runs on the listener's
+     * background thread, so it can block.
+     */
+    private void answerFromDatabase() {
+        GoogleApiClient googleApiClient = connect();
+        if (googleApiClient == null) {
+            return;
+        }
+        try {
+            WearableNotifier.notifyWearables(this, googleApiClient);
+        } finally {
+            googleApiClient.disconnect();
+        }
+    }
+
+    /**
+     * Sends the current weather's icon again if a watch lost it.  A push is otherwise skipped
+     * while the weather doesn't change, so the watch would go without an icon until it does.
+     */
+    private void resendIconIfMissing() {
+        GoogleApiClient googleApiClient = connect();
+        if (googleApiClient == null) {
+            return;
+        }
+        try {
+            WearableNotifier.resendIconIfMissing(this, googleApiClient);
+        } finally {
+            googleApiClient.disconnect();
+        }
+    }
+
+    /**
+     * @return a connected client, or null if it couldn't connect
+     */
+    private GoogleApiClient connect() {
+        GoogleApiClient googleApiClient = new GoogleApiClient.Builder(this)
+                .addApi(Wearable.API)
+                .build();
+        ConnectionResult result = googleApiClient.blockingConnect(CONNECT_TIMEOUT_SECONDS,
+                TimeUnit.SECONDS);
+        if (!result.isSuccess()) {
+            Log.e(TAG, "Couldn't connect to the wearables: " + result);
+            return null;
+        }
+        return googleApiClient;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.wear;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.text.TextUtils;
+import android.util.Base64;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers what was last sent to the wearables, so the sync adapter only pushes when what the
+ * watch shows would actually change.  Most syncs bring back the same rounded temperatures and
+ * conditions for today, and every push is a Bluetooth transfer and a watch wakeup.
+ * <p>
+ * The last push is kept in its own preferences file, so it survives the process being killed
+ * between syncs.  It is only recorded once the Data Layer accepted it.
+ */
+public final class WearableChangeDetector {
+
+    private static final String PREFS_NAME = "wearables";
+
+    private static final String KEY_HIGH_TEMP = "high-temp";
+    private static final String KEY_LOW_TEMP = "low-temp";
+    private static final String KEY_WEATHER_ID = "weather-id";
+    private static final String KEY_FORECAST = "forecast";
+
+    // Instrumentation: how many pushes went out, and how many were skipped as unchanged
+    private static final AtomicLong sPushesSent = new AtomicLong();
+    private static final AtomicLong sPushesSuppressed = new AtomicLong();
+
+    private final SharedPreferences mPrefs;
+
+    public WearableChangeDetector(Context context) {
+        mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Returns whether the values differ from the last ones sent, counting the push as
+     * suppressed if they don't.
+     */
+    public boolean hasChanged(String highTemp, String lowTemp, int weatherId, byte[] forecast) {
+        boolean changed = !TextUtils.equals(highTemp, mPrefs.getString(KEY_HIGH_TEMP, null))
+                || !TextUtils.equals(lowTemp, mPrefs.getString(KEY_LOW_TEMP, null))
+                || weatherId != mPrefs.getInt(KEY_WEATHER_ID, -1)
+                || !Arrays.equals(forecast, decode(mPrefs.getString(KEY_FORECAST, null)));
+        if (!changed) {
+            sPushesSuppressed.incrementAndGet();
+        }
+        return changed;
+    }
+
+    /**
+     * Records the values the wearables were sent.
+     */
+    public void onSent(String highTemp, String lowTemp, int weatherId, byte[] forecast) {
+        sPushesSent.incrementAndGet();
+        mPrefs.edit()
+                .putString(KEY_HIGH_TEMP, highTemp)
+                .putString(KEY_LOW_TEMP, lowTemp)
+                .putInt(KEY_WEATHER_ID, weatherId)
+                .putString(KEY_FORECAST, forecast != null
+                        ? Base64.encodeToString(forecast, Base64.NO_WRAP) : null)
+                .apply();
+    }
+
+    /**
+     * @return the weather id last sent, or -1 if nothing was
+     */
+    public int getLastWeatherId() {
+        return mPrefs.getInt(KEY_WEATHER_ID, -1);
+    }
+
+    /**
+     * Forgets what was last sent, so the next push goes out even if nothing changed.
+     */
+    public void forget() {
+        mPrefs.edit().clear().apply();
+    }
+
+    private static byte[] decode(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Base64.decode(value, Base64.NO_WRAP);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    public static long getPushesSent() {
+        return sPushesSent.get();
+    }
+
+    public static long getPushesSuppressed() {
+        return sPushesSuppressed.get();
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.wear;
+
+import android.content.Context;
+import android.net.Uri;
+import android.util.Log;
+
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.ForecastSnapshot;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.wearable.Asset;
+import com.google.android.gms.wearable.DataApi;
+import com.google.android.gms.wearable.DataItem;
+import com.google.android.gms.wearable.DataItemBuffer;
+import com.google.android.gms.wearable.DataMapItem;
+import com.google.android.gms.wearable.PutDataMapRequest;
+import com.google.android.gms.wearable.PutDataRequest;
+import com.google.android.gms.wearable.Wearable;
+
+import java.util.ArrayList;
+
+/**
+ * Sends today's weather and the coming days from the local forecast to the wearables.  Used by
+ * the sync adapter after a sync stored new data, and by WearService to answer a watch from the
+ * database when the data is fresh enough.  Blocks on the Data Layer, so it must not be called
+ * on the main thread.
+ */
+public final class WearableNotifier {
+
+    private static final String LOG_TAG = WearableNotifier.class.getSimpleName();
+
+    // paths should be same as in watch module
+    private static final String WEATHER_PATH = "/sunshine-temp-update";
+    private static final String ICON_CACHE_PATH = "/sunshine-icon-cache";
+
+    private WearableNotifier() {
+    }
+
+    public static void notifyWearables(Context context, GoogleApiClient googleApiClient) {
+        if(googleApiClient == null || !googleApiClient.isConnected()) {
+            Log.e(LOG_TAG, "Not connected :(");
+            return;
+        }
+
+        //Get weather information
+        ForecastSnapshot forecast = ForecastSnapshot.get(context);
+        int today = forecast.indexOfDate(System.currentTimeMillis());
+        if (today == -1)
+            return;
+
+        int weatherId = forecast.getWeatherId(today);
+        String highTemp = Utility.formatTemperature(context, forecast.getHigh(today));
+        String lowTemp = Utility.formatTemperature(context, forecast.getLow(today));
+        // The coming days for the watch's forecast strip, a few bytes per day
+        byte[] forecastPayload = ForecastPayload.encode(forecast, today,
+                Utility.isMetric(context));
+
+        // Only push what the watch would show differently.  The Data Layer replaces the item as
+        // a whole, so a push always carries every field, but the icon only when it's needed.
+        WearableChangeDetector changeDetector = new WearableChangeDetector(context);
+        if (!changeDetector.hasChanged(highTemp, lowTemp, weatherId, forecastPayload)) {
+            Log.d(LOG_TAG, "Wearables are up to date, " + WearableChangeDetector.getPushesSuppressed()
+                    + " pushes suppressed and " + WearableChangeDetector.getPushesSent() + " sent");
+            return;
+        }
+
+        //Send data to wearable
+        Log.d(LOG_TAG, "Sending data to wearables...");
+        PutDataMapRequest mapRequest = PutDataMapRequest.create(WEATHER_PATH);
+        mapRequest.getDataMap().putString("high-temp", highTemp);
+        mapRequest.getDataMap().putString("low-temp", lowTemp);
+        mapRequest.getDataMap().putInt("weather-id", weatherId);
+        if (forecastPayload != null) {
+            mapRequest.getDataMap().putByteArray("forecast", forecastPayload);
+        }
+        // The watch keeps every icon it was sent, by weather condition, so only send one it
+        // doesn't have yet.
+        if (!isIconCachedOnWearables(googleApiClient, weatherId)) {
+            Asset icon = IconAssetCache.getAsset(context.getResources(),
+                    Utility.getIconResourceForWeatherCondition(weatherId));
+            if (icon != null) {
+                mapRequest.getDataMap().putAsset("icon", icon);
+            }
+        }
+
+        PutDataRequest request = mapRequest.asPutDataRequest();
+        DataApi.DataItemResult result = Wearable.DataApi.putDataItem(googleApiClient, request).await();
+        if (result.getStatus().isSuccess()) {
+            Log.d(LOG_TAG, "Success!");
+            changeDetector.onSent(highTemp, lowTemp, weatherId, forecastPayload);
+        } else {
+            Log.d(LOG_TAG, "Failure! " + result.getStatus());
+        }
+    }
+
+    /**
+     * Sends the weather again, with its icon, if a watch doesn't have the icon of the weather it
+     * was last sent.  Called when a watch publishes which icons it has, which it also does when
+     * it finds one missing, e.g. after its data was cleared.
+     */
+    public static void resendIconIfMissing(Context context, GoogleApiClient googleApiClient) {
+        WearableChangeDetector changeDetector = new WearableChangeDetector(context);
+        int weatherId = changeDetector.getLastWeatherId();
+        if (weatherId == -1 || isIconCachedOnWearables(googleApiClient, weatherId)) {
+            return;
+        }
+        Log.d(LOG_TAG, "Icon " + weatherId + " missing on the wearables, sending it again");
+        changeDetector.forget();
+        notifyWearables(context, googleApiClient);
+    }
+
+    /**
+     * Returns whether every connected watch has the icon of the weather condition cached, going
+     * by the ids each of them publishes at ICON_CACHE_PATH.
+     */
+    private static boolean isIconCachedOnWearables(GoogleApiClient googleApiClient, int weatherId) {
+        // No host, so the cache item of every node matches
+        Uri uri = new Uri.Builder().scheme(PutDataRequest.WEAR_URI_SCHEME)
+                .path(ICON_CACHE_PATH).build();
+        DataItemBuffer dataItems = Wearable.DataApi.getDataItems(googleApiClient, uri).await();
+        try {
+            if (!dataItems.getStatus().isSuccess() || dataItems.getCount() == 0) {
+                return false;
+            }
+            for (DataItem dataItem : dataItems) {
+                ArrayList<Integer> cachedIds = DataMapItem.fromDataItem(dataItem).getDataMap()
+                        .getIntegerArrayList("weather-ids");
+                if (cachedIds == null || !cachedIds.contains(weatherId)) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            dataItems.release();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package github.vatsal.watch;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.test.AndroidTestCase;
+import android.text.format.Time;
+import android.util.Log;
+
+/*
+    Counts the draw calls and time of ambient frames, and compares them with an interactive
+    frame drawn from scratch, which is what ambient mode used to draw.
+ */
+public class TestAmbientRenderer extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestAmbientRenderer.class.getSimpleName();
+
+    private static final int SIZE = 320;
+    private static final int MINUTES = 60;
+
+    private AmbientRenderer mRenderer;
+    private Canvas mCanvas;
+    private Rect mBounds;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mRenderer = new AmbientRenderer(mContext.getResources());
+        mRenderer.setRound(false);
+        mRenderer.setLowBitAmbient(true);
+        mRenderer.setWeather("25°", "16°");
+        mCanvas = new Canvas(Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888));
+        mBounds = new Rect(0, 0, SIZE, SIZE);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mRenderer.release();
+        super.tearDown();
+    }
+
+    public void testRedrawWithinAMinuteIsABlit() {
+        Time time = new Time();
+        time.set(0, 30, 12, 15, 5, 2016);
+        mRenderer.draw(mCanvas, mBounds, time);
+        assertEquals("Error: a new minute should render the time and both temperatures",
+                5, mRenderer.getDrawCallCount());
+
+        time.set(30, 30, 12, 15, 5, 2016);
+        mRenderer.draw(mCanvas, mBounds, time);
+        assertEquals("Error: a redraw within the minute should only blit the cached frame",
+                6, mRenderer.getDrawCallCount());
+
+        mRenderer.setWeather("26°", "16°");
+        mRenderer.draw(mCanvas, mBounds, time);
+        assertEquals("Error: new weather should render the frame again",
+                11, mRenderer.getDrawCallCount());
+    }
+
+    public void testAmbientFrameCost() {
+        Time time = new Time();
+        time.set(0, 0, 12, 15, 5, 2016);
+        long start = time.toMillis(false);
+
+        // one frame a minute, as onTimeTick asks for, plus a redraw within each minute
+        for (int minute = 0; minute < MINUTES; minute++) {
+            time.set(start + minute * 60000L);
+            mRenderer.draw(mCanvas, mBounds, time);
+            time.set(start + minute * 60000L + 30000L);
+            mRenderer.draw(mCanvas, mBounds, time);
+        }
+        int frames = mRenderer.getFrameCount();
+        Log.i(LOG_TAG, String.format("ambient: %.1f draw calls and %d us per frame",
+                (float) mRenderer.getDrawCallCount() / frames,
+                mRenderer.getDrawNanos() / frames / 1000));
+
+        InteractiveRenderer interactive = new InteractiveRenderer(mContext.getResources());
+        interactive.setRound(false);
+        interactive.setWeather("25°", "16°");
+        interactive.setLayerCacheEnabled(false);
+        long interactiveStart = System.nanoTime();
+        for (int minute = 0; minute < MINUTES; minute++) {
+            time.set(start + minute * 60000L);
+            interactive.draw(mCanvas, mBounds, time);
+            time.set(start + minute * 60000L + 30000L);
+            interactive.draw(mCanvas, mBounds, time);
+        }
+        Log.i(LOG_TAG, String.format("full face from scratch: 5 draw calls and %d us per frame",
+                (System.nanoTime() - interactiveStart) / (2 * MINUTES) / 1000));
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package github.vatsal.watch;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.os.Debug;
+import android.test.AndroidTestCase;
+import android.text.format.Time;
+
+import java.text.DateFormatSymbols;
+
+public class TestClockText extends AndroidTestCase {
+
+    private static final int FRAMES = 60;
+
+    private Paint mTimePaint;
+    private Paint mDatePaint;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mTimePaint = new Paint();
+        mTimePaint.setTextSize(40);
+        mDatePaint = new Paint();
+        mDatePaint.setTextSize(16);
+    }
+
+    public void testFormatting() {
+        ClockText clockText = new ClockText(mTimePaint, mDatePaint);
+        Time time = new Time();
+        time.set(5, 7, 9, 3, 0, 2016);  // 09:07:05 on January 3rd, 2016
+        time.normalize(false);
+
+        assertEquals(ClockText.TIME_CHANGED | ClockText.DATE_CHANGED, clockText.update(time));
+        assertEquals("09:07", clockText.getTimeText());
+
+        DateFormatSymbols symbols = new DateFormatSymbols();
+        String expectedDate = String.format("%s, %s %d %d",
+                symbols.getShortWeekdays()[time.weekDay + 1],
+                symbols.getShortMonths()[time.month],
+                time.monthDay, time.year).toUpperCase();
+        assertEquals(expectedDate, clockText.getDateText());
+
+        // a new second changes nothing, a new minute only the time
+        time.second++;
+        time.normalize(false);
+        assertEquals(0, clockText.update(time));
+        time.minute++;
+        time.normalize(false);
+        assertEquals(ClockText.TIME_CHANGED, clockText.update(time));
+        assertEquals("09:08", clockText.getTimeText());
+    }
+
+    @SuppressWarnings("deprecation")
+    public void testSteadyStateFrameDoesNotAllocate() {
+        ClockText clockText = new ClockText(mTimePaint, mDatePaint);
+        Canvas canvas = new Canvas(Bitmap.createBitmap(320, 320, Bitmap.Config.ARGB_8888));
+        Time time = new Time();
+        time.set(0, 30, 12, 15, 5, 2016);
+        long start = time.toMillis(false);
+
+        // the first frame formats and measures everything
+        time.set(start);
+        clockText.update(time);
+        drawFrame(clockText, canvas);
+
+        Debug.startAllocCounting();
+        Debug.resetThreadAllocSize();
+        for (int frame = 0; frame < FRAMES; frame++) {
+            time.set(start + frame * 500);
+            clockText.update(time);
+            drawFrame(clockText, canvas);
+        }
+        int allocated = Debug.getThreadAllocSize();
+        Debug.stopAllocCounting();
+
+        assertEquals("Error: steady state frames allocated " + allocated + " bytes", 0, allocated);
+    }
+
+    private static void drawFrame(ClockText clockText, Canvas canvas) {
+        clockText.drawTime(canvas, 160, 80);
+        clockText.drawDate(canvas, 160, 110);
+    }
+}
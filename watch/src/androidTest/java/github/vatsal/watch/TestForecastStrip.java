@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package github.vatsal.watch;
+
+import android.graphics.Paint;
+import android.os.Debug;
+import android.test.AndroidTestCase;
+
+import java.text.DateFormatSymbols;
+import java.util.Calendar;
+
+public class TestForecastStrip extends AndroidTestCase {
+
+    // Monday 2 January 2017, in days since the epoch
+    private static final int MONDAY = 17168;
+
+    private Paint mPaint;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mPaint = new Paint();
+        mPaint.setTextSize(16);
+    }
+
+    /**
+     * Packs days the way the app module does, starting at MONDAY.
+     */
+    private static byte[] createPayload(int[] weatherIds, int[] highs, int[] lows) {
+        byte[] payload = new byte[5 + weatherIds.length * 4];
+        payload[0] = ForecastStrip.VERSION;
+        payload[1] = 1;
+        payload[2] = (byte) (MONDAY >> 8);
+        payload[3] = (byte) MONDAY;
+        payload[4] = (byte) weatherIds.length;
+        for (int i = 0; i < weatherIds.length; i++) {
+            payload[5 + i * 4] = (byte) (weatherIds[i] >> 8);
+            payload[6 + i * 4] = (byte) weatherIds[i];
+            payload[7 + i * 4] = (byte) highs[i];
+            payload[8 + i * 4] = (byte) lows[i];
+        }
+        return payload;
+    }
+
+    private static String weekday(int calendarDay) {
+        return new DateFormatSymbols().getShortWeekdays()[calendarDay].toUpperCase();
+    }
+
+    public void testStartsTomorrowAndCycles() {
+        ForecastStrip strip = new ForecastStrip(mPaint);
+        assertTrue(strip.setForecast(createPayload(
+                new int[] {800, 501, 601}, new int[] {24, 3, -2}, new int[] {15, -4, -12})));
+        strip.setToday(MONDAY);
+
+        assertEquals(2, strip.getDayCount());
+        assertEquals(weekday(Calendar.TUESDAY) + " 3° -4°", strip.getText());
+        assertTrue(strip.showNextDay());
+        assertEquals(weekday(Calendar.WEDNESDAY) + " -2° -12°", strip.getText());
+        assertTrue(strip.showNextDay());
+        assertEquals(weekday(Calendar.TUESDAY) + " 3° -4°", strip.getText());
+
+        // a day later only Wednesday is left, and there is nothing to cycle through
+        strip.setToday(MONDAY + 1);
+        assertEquals(1, strip.getDayCount());
+        assertFalse(strip.showNextDay());
+        strip.setToday(MONDAY + 2);
+        assertEquals(0, strip.getDayCount());
+        assertEquals("", strip.getText());
+    }
+
+    public void testRejectsUnknownPayloads() {
+        ForecastStrip strip = new ForecastStrip(mPaint);
+        byte[] payload = createPayload(new int[] {800, 800}, new int[] {20, 21}, new int[] {10, 11});
+        assertTrue(strip.setForecast(payload));
+        strip.setToday(MONDAY - 1);
+        String text = strip.getText();
+
+        byte[] newer = payload.clone();
+        newer[0] = ForecastStrip.VERSION + 1;
+        assertFalse(strip.setForecast(newer));
+        byte[] truncated = new byte[payload.length - 1];
+        System.arraycopy(payload, 0, truncated, 0, truncated.length);
+        assertFalse(strip.setForecast(truncated));
+        assertFalse(strip.setForecast(null));
+        assertEquals(text, strip.getText());
+    }
+
+    @SuppressWarnings("deprecation")
+    public void testDecodingDoesNotAllocate() {
+        ForecastStrip strip = new ForecastStrip(mPaint);
+        byte[] payload = createPayload(new int[] {800, 501, 601, 200, 800, 801, 802},
+                new int[] {24, 23, 22, 21, 20, 19, 18}, new int[] {15, 14, 13, 12, 11, 10, 9});
+        strip.setToday(MONDAY);
+        strip.setForecast(payload);
+
+        Debug.startAllocCounting();
+        Debug.resetThreadAllocSize();
+        for (int i = 0; i < 20; i++) {
+            strip.setForecast(payload);
+            strip.showNextDay();
+        }
+        int allocated = Debug.getThreadAllocSize();
+        Debug.stopAllocCounting();
+
+        assertEquals("Error: decoding allocated " + allocated + " bytes", 0, allocated);
+    }
+}
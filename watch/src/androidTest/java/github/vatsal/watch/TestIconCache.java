@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package github.vatsal.watch;
+
+import android.graphics.Bitmap;
+import android.test.AndroidTestCase;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+public class TestIconCache extends AndroidTestCase {
+
+    private File mDirectory;
+    private final ArrayList<Bitmap> mEvicted = new ArrayList<>();
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDirectory = new File(mContext.getCacheDir(), "test-icons");
+        deleteDirectory();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteDirectory();
+        super.tearDown();
+    }
+
+    private void deleteDirectory() {
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDirectory.delete();
+    }
+
+    private IconCache createCache(int maxMemoryIcons) {
+        return new IconCache(mDirectory, maxMemoryIcons, new IconCache.EvictionListener() {
+            @Override
+            public void onIconEvicted(Bitmap icon) {
+                mEvicted.add(icon);
+            }
+        });
+    }
+
+    public void testDiskRoundTrip() {
+        IconCache cache = createCache(2);
+        assertNull(cache.read(800));
+        assertTrue(cache.getStoredIds().isEmpty());
+
+        byte[] clear = new byte[]{1, 2, 3};
+        byte[] rain = new byte[]{4, 5};
+        assertTrue(cache.write(800, clear));
+        assertTrue(cache.write(500, rain));
+        assertTrue(Arrays.equals(clear, cache.read(800)));
+        assertTrue(Arrays.equals(rain, cache.read(500)));
+
+        // a new cache, as after a restart, still has them
+        ArrayList<Integer> ids = createCache(2).getStoredIds();
+        assertEquals(2, ids.size());
+        assertTrue(ids.contains(800));
+        assertTrue(ids.contains(500));
+    }
+
+    public void testMemoryEviction() {
+        IconCache cache = createCache(2);
+        Bitmap clear = Bitmap.createBitmap(1, 1, Bitmap.Config.ARGB_8888);
+        Bitmap rain = Bitmap.createBitmap(1, 1, Bitmap.Config.ARGB_8888);
+        Bitmap snow = Bitmap.createBitmap(1, 1, Bitmap.Config.ARGB_8888);
+        cache.put(800, clear);
+        cache.put(500, rain);
+        assertSame(clear, cache.get(800));
+
+        // rain is now the least recently used
+        cache.put(600, snow);
+        assertNull(cache.get(500));
+        assertEquals(1, mEvicted.size());
+        assertSame(rain, mEvicted.get(0));
+        assertTrue(cache.containsInMemory(clear));
+        assertFalse(cache.containsInMemory(rain));
+    }
+}
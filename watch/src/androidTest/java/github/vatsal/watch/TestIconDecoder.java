@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package github.vatsal.watch;
+
+import android.graphics.Bitmap;
+import android.test.AndroidTestCase;
+
+import java.io.ByteArrayOutputStream;
+
+public class TestIconDecoder extends AndroidTestCase {
+
+    private static final int SIZE = 56;
+
+    private static byte[] createPng(int width, int height) {
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        bitmap.eraseColor(0xff03a9f4);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.PNG, 100, out);
+        bitmap.recycle();
+        return out.toByteArray();
+    }
+
+    public void testDecodesToIconSize() {
+        for (int sourceSize : new int[]{SIZE, 100, 256, 512}) {
+            Bitmap icon = IconDecoder.decodeToSize(createPng(sourceSize, sourceSize), SIZE, null);
+            assertNotNull(icon);
+            assertEquals("Error: wrong width decoding a " + sourceSize + " px icon",
+                    SIZE, icon.getWidth());
+            assertEquals("Error: wrong height decoding a " + sourceSize + " px icon",
+                    SIZE, icon.getHeight());
+            assertTrue(icon.isMutable());
+        }
+    }
+
+    public void testDecodesIntoReusableBitmap() {
+        Bitmap reusable = IconDecoder.decodeToSize(createPng(256, 256), SIZE, null);
+        Bitmap icon = IconDecoder.decodeToSize(createPng(512, 512), SIZE, reusable);
+        assertSame("Error: the reusable bitmap wasn't decoded into", reusable, icon);
+        assertEquals(SIZE, icon.getWidth());
+    }
+
+    public void testFallsBackWhenReusableIsTooSmall() {
+        Bitmap small = Bitmap.createBitmap(8, 8, Bitmap.Config.ARGB_8888);
+        Bitmap icon = IconDecoder.decodeToSize(createPng(256, 256), SIZE, small);
+        assertNotSame(small, icon);
+        assertEquals(SIZE, icon.getWidth());
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package github.vatsal.watch;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.os.Debug;
+import android.test.AndroidTestCase;
+import android.text.format.Time;
+import android.util.Log;
+
+/*
+    Compares drawing every frame from scratch with drawing it from the cached static layer, and
+    checks that neither allocates once running.
+ */
+public class TestInteractiveRenderer extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestInteractiveRenderer.class.getSimpleName();
+
+    private static final int SIZE = 320;
+    private static final int WARM_UP_FRAMES = 20;
+    private static final int FRAMES = 300;
+    private static final int STEADY_STATE_FRAMES = 60;
+
+    private InteractiveRenderer createRenderer(boolean layerCacheEnabled) {
+        InteractiveRenderer renderer = new InteractiveRenderer(mContext.getResources());
+        renderer.setRound(false);
+        renderer.setWeather("25°", "16°");
+        int iconSize = (int) mContext.getResources().getDimension(R.dimen.digital_icon_size);
+        Bitmap icon = Bitmap.createBitmap(iconSize, iconSize, Bitmap.Config.ARGB_8888);
+        icon.eraseColor(0xff2196f3);
+        renderer.setIcon(icon);
+        renderer.setLayerCacheEnabled(layerCacheEnabled);
+        return renderer;
+    }
+
+    public void testLayerCacheDrawsTheSameFrame() {
+        Rect bounds = new Rect(0, 0, SIZE, SIZE);
+        Time time = new Time();
+        time.setToNow();
+
+        Bitmap direct = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+        createRenderer(false).draw(new Canvas(direct), bounds, time);
+        Bitmap cached = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+        InteractiveRenderer renderer = createRenderer(true);
+        renderer.draw(new Canvas(cached), bounds, time);
+        renderer.release();
+
+        assertTrue("Error: the cached layer draws a different frame", direct.sameAs(cached));
+    }
+
+    public void testSteadyStateFrameDoesNotAllocate() {
+        assertFramesDoNotAllocate(true);
+        assertFramesDoNotAllocate(false);
+    }
+
+    /**
+     * Draws a run of whole frames, background, date, icon and temperatures included, counting
+     * what they allocate.
+     */
+    @SuppressWarnings("deprecation")
+    private void assertFramesDoNotAllocate(boolean layerCacheEnabled) {
+        InteractiveRenderer renderer = createRenderer(layerCacheEnabled);
+        Canvas canvas = new Canvas(Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888));
+        Rect bounds = new Rect(0, 0, SIZE, SIZE);
+        Time time = new Time();
+        time.set(0, 30, 12, 15, 5, 2016);
+        long start = time.toMillis(false);
+
+        // the first frame formats and measures everything, and creates the layer
+        time.set(start);
+        renderer.draw(canvas, bounds, time);
+
+        Debug.startAllocCounting();
+        Debug.resetThreadAllocSize();
+        for (int frame = 0; frame < STEADY_STATE_FRAMES; frame++) {
+            time.set(start + frame * 500L);
+            renderer.draw(canvas, bounds, time);
+        }
+        int allocated = Debug.getThreadAllocSize();
+        Debug.stopAllocCounting();
+        renderer.release();
+
+        assertEquals("Error: steady state frames " + (layerCacheEnabled ? "with" : "without")
+                + " the layer allocated " + allocated + " bytes", 0, allocated);
+    }
+
+    public void testFrameTime() {
+        long directNanos = measureFrameTime(false);
+        long cachedNanos = measureFrameTime(true);
+        Log.i(LOG_TAG, String.format("frame time: %d us drawn from scratch, %d us from the " +
+                "cached layer", directNanos / 1000, cachedNanos / 1000));
+    }
+
+    private long measureFrameTime(boolean layerCacheEnabled) {
+        InteractiveRenderer renderer = createRenderer(layerCacheEnabled);
+        Canvas canvas = new Canvas(Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888));
+        Rect bounds = new Rect(0, 0, SIZE, SIZE);
+        Time time = new Time();
+        time.setToNow();
+        long now = time.toMillis(false);
+
+        for (int frame = 0; frame < WARM_UP_FRAMES; frame++) {
+            renderer.draw(canvas, bounds, time);
+        }
+        long start = System.nanoTime();
+        for (int frame = 0; frame < FRAMES; frame++) {
+            // one frame a second, like interactive mode
+            time.set(now + frame * 1000L);
+            renderer.draw(canvas, bounds, time);
+        }
+        long elapsed = System.nanoTime() - start;
+        renderer.release();
+        return elapsed / FRAMES;
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package github.vatsal.watch;
+
+import android.content.Context;
+import android.test.AndroidTestCase;
+
+public class TestWeatherStore extends AndroidTestCase {
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        clearStore();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        clearStore();
+        super.tearDown();
+    }
+
+    private void clearStore() {
+        mContext.getSharedPreferences("weather", Context.MODE_PRIVATE).edit().clear().commit();
+    }
+
+    public void testEmptyStore() {
+        WeatherStore store = new WeatherStore(mContext);
+        assertNull(store.getHighTemp());
+        assertNull(store.getLowTemp());
+        assertEquals(IconDecoder.NO_WEATHER_ID, store.getWeatherId());
+    }
+
+    public void testSavedWeatherSurvivesANewStore() {
+        new WeatherStore(mContext).save("25°", "16°", 800);
+
+        // as when the watch face is created again
+        WeatherStore store = new WeatherStore(mContext);
+        assertEquals("25°", store.getHighTemp());
+        assertEquals("16°", store.getLowTemp());
+        assertEquals(800, store.getWeatherId());
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package github.vatsal.watch;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+import android.text.format.Time;
+import android.util.Log;
+
+/**
+ * Draws the watch face in ambient mode: just the time and the high and low temperatures, white
+ * on black, without the date or the weather icon.  On low-bit displays nothing is anti-aliased.
+ * <p>
+ * Ambient mode only draws when the minute changes (onTimeTick), so a whole frame is rendered
+ * once per minute into a cached bitmap, and any other redraw within that minute is a blit.
+ */
+final class AmbientRenderer {
+
+    private static final String LOG_TAG = AmbientRenderer.class.getSimpleName();
+
+    private static final Typeface NORMAL_TYPEFACE = Typeface.create(Typeface.SANS_SERIF, Typeface.NORMAL);
+
+    private final Resources mResources;
+
+    private final Paint mTimePaint;
+    private final Paint mHighTempPaint;
+    private final Paint mLowTempPaint;
+
+    private final ClockText mClockText;
+
+    // Same positions as in interactive mode, so nothing jumps when the mode changes
+    private final float mYOffset;
+    private float mTempYOffset;
+    private float mTempMarginRight;
+
+    private String mHighTemp;
+    private String mLowTemp;
+    private float mHighTempWidth;
+    private float mLowTempWidth;
+
+    private Bitmap mFrame;
+    private Canvas mFrameCanvas;
+    private boolean mFrameDirty = true;
+
+    // Instrumentation: frames drawn, and the draw calls and time they took
+    private int mFrames;
+    private int mDrawCalls;
+    private long mDrawNanos;
+
+    AmbientRenderer(Resources resources) {
+        mResources = resources;
+
+        mYOffset = resources.getDimension(R.dimen.digital_y_offset);
+
+        mTimePaint = createTextPaint(resources.getColor(R.color.ambient_text));
+        mHighTempPaint = createTextPaint(resources.getColor(R.color.ambient_text));
+        mLowTempPaint = createTextPaint(resources.getColor(R.color.ambient_text_secondary));
+
+        mClockText = new ClockText(mTimePaint, null);
+    }
+
+    private static Paint createTextPaint(int color) {
+        Paint paint = new Paint();
+        paint.setColor(color);
+        paint.setTypeface(NORMAL_TYPEFACE);
+        paint.setAntiAlias(true);
+        return paint;
+    }
+
+    /**
+     * Loads the sizes that have alternate values for round watches.
+     */
+    void setRound(boolean isRound) {
+        mTimePaint.setTextSize(mResources.getDimension(isRound
+                ? R.dimen.digital_time_text_size_round : R.dimen.digital_time_text_size));
+        float tempTextSize = mResources.getDimension(isRound
+                ? R.dimen.digital_temp_text_size_round : R.dimen.digital_temp_text_size);
+        mHighTempPaint.setTextSize(tempTextSize);
+        mLowTempPaint.setTextSize(tempTextSize);
+
+        mTempYOffset = mYOffset
+                + mResources.getDimension(R.dimen.digital_time_text_margin_bottom)
+                + mResources.getDimension(R.dimen.digital_date_text_margin_bottom);
+        mTempMarginRight = mResources.getDimension(R.dimen.digital_temp_text_margin_right);
+
+        mClockText.remeasure();
+        measureTemperatures();
+        mFrameDirty = true;
+    }
+
+    /**
+     * Whether the display supports fewer bits for each color in ambient mode. When true, text
+     * is drawn without anti-aliasing.
+     */
+    void setLowBitAmbient(boolean lowBitAmbient) {
+        mTimePaint.setAntiAlias(!lowBitAmbient);
+        mHighTempPaint.setAntiAlias(!lowBitAmbient);
+        mLowTempPaint.setAntiAlias(!lowBitAmbient);
+        mFrameDirty = true;
+    }
+
+    void setWeather(String highTemp, String lowTemp) {
+        mHighTemp = highTemp;
+        mLowTemp = lowTemp;
+        measureTemperatures();
+        mFrameDirty = true;
+    }
+
+    private void measureTemperatures() {
+        mHighTempWidth = mHighTemp != null ? mHighTempPaint.measureText(mHighTemp) : 0;
+        mLowTempWidth = mLowTemp != null ? mLowTempPaint.measureText(mLowTemp) : 0;
+    }
+
+    void draw(Canvas canvas, Rect bounds, Time time) {
+        long start = System.nanoTime();
+        int drawCalls = 0;
+
+        if ((mClockText.update(time) & ClockText.TIME_CHANGED) != 0) {
+            mFrameDirty = true;
+        }
+        int width = bounds.width();
+        int height = bounds.height();
+        if (mFrame == null || mFrame.getWidth() != width || mFrame.getHeight() != height) {
+            if (mFrame != null) {
+                mFrame.recycle();
+            }
+            // Ambient mode is black, white and grey, so 16 bits a pixel are plenty
+            mFrame = Bitmap.createBitmap(width, height, Bitmap.Config.RGB_565);
+            mFrameCanvas = new Canvas(mFrame);
+            mFrameDirty = true;
+        }
+        if (mFrameDirty) {
+            drawCalls += drawFrame(mFrameCanvas, bounds);
+            mFrameDirty = false;
+        }
+        canvas.drawBitmap(mFrame, 0, 0, null);
+        drawCalls++;
+
+        mFrames++;
+        mDrawCalls += drawCalls;
+        mDrawNanos += System.nanoTime() - start;
+    }
+
+    /**
+     * @return the number of draw calls it took
+     */
+    private int drawFrame(Canvas canvas, Rect bounds) {
+        canvas.drawColor(Color.BLACK);
+        float centerX = bounds.centerX();
+        mClockText.drawTime(canvas, centerX, mYOffset);
+        if (mHighTemp == null || mLowTemp == null) {
+            return 2;
+        }
+        // With no icon to the left, the temperatures are centered as a pair
+        float highX = centerX - (mHighTempWidth + mTempMarginRight + mLowTempWidth) / 2;
+        canvas.drawText(mHighTemp, highX, mTempYOffset, mHighTempPaint);
+        canvas.drawText(mLowTemp, highX + mHighTempWidth + mTempMarginRight, mTempYOffset,
+                mLowTempPaint);
+        return 4;
+    }
+
+    int getFrameCount() {
+        return mFrames;
+    }
+
+    int getDrawCallCount() {
+        return mDrawCalls;
+    }
+
+    long getDrawNanos() {
+        return mDrawNanos;
+    }
+
+    /**
+     * Logs the draw calls and time per frame since the last call, and starts counting again.
+     */
+    void logStats() {
+        if (mFrames == 0) {
+            return;
+        }
+        Log.d(LOG_TAG, mFrames + " ambient frames, " + (float) mDrawCalls / mFrames +
+                " draw calls and " + mDrawNanos / mFrames / 1000 + " us per frame");
+        mFrames = 0;
+        mDrawCalls = 0;
+        mDrawNanos = 0;
+    }
+
+    /**
+     * Frees the cached frame.
+     */
+    void release() {
+        if (mFrame != null) {
+            mFrame.recycle();
+            mFrame = null;
+            mFrameCanvas = null;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package github.vatsal.watch;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.text.format.Time;
+
+import java.text.DateFormatSymbols;
+import java.util.Locale;
+
+/**
+ * The time (HH:MM) and date (SHORT-WEEKDAY, SHORT-MONTH DAY YEAR) shown on the watch face.
+ * The text is kept in char buffers that are rewritten in place, and measured again only when
+ * it changes, so that drawing a frame doesn't allocate anything.  Without a date paint only
+ * the time is kept.
+ */
+final class ClockText {
+
+    static final int TIME_CHANGED = 1;
+    static final int DATE_CHANGED = 1 << 1;
+
+    private static final int TIME_LENGTH = 5;
+
+    private final Paint mTimePaint;
+    private final Paint mDatePaint;
+
+    // Upper case short names, indexed by Time.weekDay and Time.month
+    private final char[][] mDayNames = new char[7][];
+    private final char[][] mMonthNames = new char[12][];
+
+    private final char[] mTimeText = new char[TIME_LENGTH];
+    private final char[] mDateText;
+    private int mDateLength;
+    private float mTimeWidth;
+    private float mDateWidth;
+
+    private int mHour = -1;
+    private int mMinute = -1;
+    private int mYearDay = -1;
+    private int mYear = -1;
+
+    ClockText(Paint timePaint, Paint datePaint) {
+        mTimePaint = timePaint;
+        mDatePaint = datePaint;
+
+        DateFormatSymbols symbols = new DateFormatSymbols();
+        String[] weekdays = symbols.getShortWeekdays();
+        String[] months = symbols.getShortMonths();
+        int longestDay = 0;
+        int longestMonth = 0;
+        for (int i = 0; i < mDayNames.length; i++) {
+            // getShortWeekdays() is indexed by Calendar.SUNDAY (1) and up
+            mDayNames[i] = weekdays[i + 1].toUpperCase(Locale.getDefault()).toCharArray();
+            longestDay = Math.max(longestDay, mDayNames[i].length);
+        }
+        for (int i = 0; i < mMonthNames.length; i++) {
+            mMonthNames[i] = months[i].toUpperCase(Locale.getDefault()).toCharArray();
+            longestMonth = Math.max(longestMonth, mMonthNames[i].length);
+        }
+        // ", " + " " + 2 digit day + " " + 4 digit year
+        mDateText = new char[longestDay + longestMonth + 10];
+    }
+
+    /**
+     * Brings the text up to date with the time.
+     *
+     * @return which of the texts changed, as TIME_CHANGED and DATE_CHANGED flags
+     */
+    int update(Time time) {
+        int changed = 0;
+        if (time.hour != mHour || time.minute != mMinute) {
+            mHour = time.hour;
+            mMinute = time.minute;
+            writeTwoDigits(mTimeText, 0, mHour);
+            mTimeText[2] = ':';
+            writeTwoDigits(mTimeText, 3, mMinute);
+            mTimeWidth = mTimePaint.measureText(mTimeText, 0, TIME_LENGTH);
+            changed |= TIME_CHANGED;
+        }
+        if (time.yearDay != mYearDay || time.year != mYear) {
+            mYearDay = time.yearDay;
+            mYear = time.year;
+            int length = append(mDateText, 0, mDayNames[time.weekDay]);
+            mDateText[length++] = ',';
+            mDateText[length++] = ' ';
+            length = append(mDateText, length, mMonthNames[time.month]);
+            mDateText[length++] = ' ';
+            length = writeNumber(mDateText, length, time.monthDay);
+            mDateText[length++] = ' ';
+            length = writeNumber(mDateText, length, time.year);
+            mDateLength = length;
+            if (mDatePaint != null) {
+                mDateWidth = mDatePaint.measureText(mDateText, 0, mDateLength);
+            }
+            changed |= DATE_CHANGED;
+        }
+        return changed;
+    }
+
+    /**
+     * Measures the text again, after the text size of the paints changed.
+     */
+    void remeasure() {
+        mTimeWidth = mTimePaint.measureText(mTimeText, 0, TIME_LENGTH);
+        if (mDatePaint != null) {
+            mDateWidth = mDatePaint.measureText(mDateText, 0, mDateLength);
+        }
+    }
+
+    void drawTime(Canvas canvas, float centerX, float y) {
+        canvas.drawText(mTimeText, 0, TIME_LENGTH, centerX - mTimeWidth / 2, y, mTimePaint);
+    }
+
+    void drawDate(Canvas canvas, float centerX, float y) {
+        canvas.drawText(mDateText, 0, mDateLength, centerX - mDateWidth / 2, y, mDatePaint);
+    }
+
+    String getTimeText() {
+        return new String(mTimeText, 0, TIME_LENGTH);
+    }
+
+    String getDateText() {
+        return new String(mDateText, 0, mDateLength);
+    }
+
+    private static void writeTwoDigits(char[] buffer, int offset, int value) {
+        buffer[offset] = (char) ('0' + value / 10);
+        buffer[offset + 1] = (char) ('0' + value % 10);
+    }
+
+    private static int writeNumber(char[] buffer, int offset, int value) {
+        int digits = 1;
+        for (int rest = value / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        for (int i = offset + digits - 1; i >= offset; i--) {
+            buffer[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return offset + digits;
+    }
+
+    private static int append(char[] buffer, int offset, char[] text) {
+        System.arraycopy(text, 0, buffer, offset, text.length);
+        return offset + text.length;
+    }
+}
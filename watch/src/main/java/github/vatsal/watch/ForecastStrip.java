@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package github.vatsal.watch;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+
+import java.text.DateFormatSymbols;
+import java.util.Locale;
+
+/**
+ * The coming days of the forecast, one at a time ("TUE 24° 15°"), and tapping the watch face
+ * moves on to the next.  The phone sends them packed in a few bytes (see the app module's
+ * ForecastPayload for the layout), which are decoded into arrays allocated once, and the text
+ * is rewritten in place, so neither a new forecast nor a frame allocates anything.
+ */
+final class ForecastStrip {
+
+    // should be same as in the app module
+    static final int VERSION = 1;
+    static final int MAX_DAYS = 7;
+    private static final int HEADER_SIZE = 5;
+    private static final int DAY_SIZE = 4;
+
+    // 1 January 1970 was a Thursday
+    private static final int EPOCH_WEEKDAY = 4;
+
+    private final Paint mPaint;
+
+    private final int[] mWeatherIds = new int[MAX_DAYS];
+    private final int[] mHighs = new int[MAX_DAYS];
+    private final int[] mLows = new int[MAX_DAYS];
+    private int mFirstDay;
+    private int mCount;
+
+    // Upper case short names, indexed by Time.weekDay
+    private final char[][] mDayNames = new char[7][];
+    private final char[] mText;
+    private int mTextLength;
+    private float mTextWidth;
+
+    private int mToday = -1;
+    private int mSelected;
+
+    ForecastStrip(Paint paint) {
+        mPaint = paint;
+
+        String[] weekdays = new DateFormatSymbols().getShortWeekdays();
+        int longestDay = 0;
+        for (int i = 0; i < mDayNames.length; i++) {
+            // getShortWeekdays() is indexed by Calendar.SUNDAY (1) and up
+            mDayNames[i] = weekdays[i + 1].toUpperCase(Locale.getDefault()).toCharArray();
+            longestDay = Math.max(longestDay, mDayNames[i].length);
+        }
+        // " " + "-128°" + " " + "-128°"
+        mText = new char[longestDay + 12];
+    }
+
+    /**
+     * Replaces the forecast with one the phone sent.
+     *
+     * @return false if the payload isn't one this version understands, in which case the
+     * forecast is left as it was
+     */
+    boolean setForecast(byte[] payload) {
+        if (payload == null || payload.length < HEADER_SIZE || payload[0] != VERSION) {
+            return false;
+        }
+        int count = payload[4] & 0xff;
+        if (count > MAX_DAYS || payload.length < HEADER_SIZE + count * DAY_SIZE) {
+            return false;
+        }
+        mFirstDay = (payload[2] & 0xff) << 8 | payload[3] & 0xff;
+        int offset = HEADER_SIZE;
+        for (int i = 0; i < count; i++) {
+            mWeatherIds[i] = (payload[offset] & 0xff) << 8 | payload[offset + 1] & 0xff;
+            // signed
+            mHighs[i] = payload[offset + 2];
+            mLows[i] = payload[offset + 3];
+            offset += DAY_SIZE;
+        }
+        mCount = count;
+        mSelected = 0;
+        updateText();
+        return true;
+    }
+
+    /**
+     * @param day today, in days since the epoch; the strip starts with the day after it
+     */
+    void setToday(int day) {
+        if (day != mToday) {
+            mToday = day;
+            mSelected = 0;
+            updateText();
+        }
+    }
+
+    /**
+     * @return how many of the days are still to come
+     */
+    int getDayCount() {
+        return Math.max(0, mCount - getFirstIndex());
+    }
+
+    /**
+     * Moves on to the next day, or back to the first one after the last.
+     *
+     * @return whether that changed the day shown
+     */
+    boolean showNextDay() {
+        int days = getDayCount();
+        if (days <= 1) {
+            return false;
+        }
+        mSelected = (mSelected + 1) % days;
+        updateText();
+        return true;
+    }
+
+    private int getFirstIndex() {
+        return Math.max(0, mToday + 1 - mFirstDay);
+    }
+
+    private void updateText() {
+        if (getDayCount() == 0) {
+            mTextLength = 0;
+            mTextWidth = 0;
+            return;
+        }
+        int index = getFirstIndex() + mSelected;
+        char[] dayName = mDayNames[(mFirstDay + index + EPOCH_WEEKDAY) % 7];
+        System.arraycopy(dayName, 0, mText, 0, dayName.length);
+        int length = dayName.length;
+        mText[length++] = ' ';
+        length = writeDegrees(mText, length, mHighs[index]);
+        mText[length++] = ' ';
+        length = writeDegrees(mText, length, mLows[index]);
+        mTextLength = length;
+        mTextWidth = mPaint.measureText(mText, 0, mTextLength);
+    }
+
+    /**
+     * Measures the text again, after the text size of the paint changed.
+     */
+    void remeasure() {
+        mTextWidth = mPaint.measureText(mText, 0, mTextLength);
+    }
+
+    void draw(Canvas canvas, float centerX, float y) {
+        if (mTextLength > 0) {
+            canvas.drawText(mText, 0, mTextLength, centerX - mTextWidth / 2, y, mPaint);
+        }
+    }
+
+    String getText() {
+        return new String(mText, 0, mTextLength);
+    }
+
+    private static int writeDegrees(char[] buffer, int offset, int value) {
+        if (value < 0) {
+            buffer[offset++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (int rest = value / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        for (int i = offset + digits - 1; i >= offset; i--) {
+            buffer[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        offset += digits;
+        buffer[offset++] = '\u00B0';
+        return offset;
+    }
+}
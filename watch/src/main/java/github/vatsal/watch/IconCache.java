@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package github.vatsal.watch;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+
+/**
+ * Weather icons by weather condition id: the decoded icons most recently shown are kept in
+ * memory, and the encoded image of every icon the phone ever sent is kept on disk.  The phone
+ * only sends an icon for conditions the watch doesn't have on disk yet.
+ * <p>
+ * The disk side is only used from the decode thread.  There are only a few dozen weather
+ * conditions, so it isn't bounded.
+ */
+final class IconCache {
+
+    private static final String LOG_TAG = IconCache.class.getSimpleName();
+
+    private static final String FILE_SUFFIX = ".png";
+
+    interface EvictionListener {
+        /**
+         * Called with a decoded icon that was pushed out of the memory cache.
+         */
+        void onIconEvicted(Bitmap icon);
+    }
+
+    private final File mDirectory;
+    private final LruCache<Integer, Bitmap> mMemory;
+
+    IconCache(File directory, int maxMemoryIcons, final EvictionListener evictionListener) {
+        mDirectory = directory;
+        mMemory = new LruCache<Integer, Bitmap>(maxMemoryIcons) {
+            @Override
+            protected void entryRemoved(boolean evicted, Integer key, Bitmap oldValue,
+                                        Bitmap newValue) {
+                if (evicted) {
+                    evictionListener.onIconEvicted(oldValue);
+                }
+            }
+        };
+    }
+
+    Bitmap get(int weatherId) {
+        return mMemory.get(weatherId);
+    }
+
+    void put(int weatherId, Bitmap icon) {
+        mMemory.put(weatherId, icon);
+    }
+
+    boolean containsInMemory(Bitmap icon) {
+        return mMemory.snapshot().containsValue(icon);
+    }
+
+    /**
+     * @return the encoded icon stored for the condition, or null if there is none
+     */
+    byte[] read(int weatherId) {
+        File file = getFile(weatherId);
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            return readFully(new FileInputStream(file));
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error reading cached icon " + file, e);
+            return null;
+        }
+    }
+
+    /**
+     * Stores the encoded icon of a condition.
+     *
+     * @return whether it was stored
+     */
+    boolean write(int weatherId, byte[] data) {
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            return false;
+        }
+        // write to a temporary file first, so a crash never leaves half an icon behind
+        File file = getFile(weatherId);
+        File temporary = new File(mDirectory, file.getName() + ".tmp");
+        try {
+            FileOutputStream out = new FileOutputStream(temporary);
+            try {
+                out.write(data);
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error caching icon " + file, e);
+            temporary.delete();
+            return false;
+        }
+        return temporary.renameTo(file);
+    }
+
+    /**
+     * @return the conditions that have an icon on disk
+     */
+    ArrayList<Integer> getStoredIds() {
+        ArrayList<Integer> ids = new ArrayList<>();
+        String[] names = mDirectory.list();
+        if (names == null) {
+            return ids;
+        }
+        for (String name : names) {
+            if (!name.endsWith(FILE_SUFFIX)) {
+                continue;
+            }
+            try {
+                ids.add(Integer.parseInt(name.substring(0, name.length() - FILE_SUFFIX.length())));
+            } catch (NumberFormatException e) {
+                // not one of ours
+            }
+        }
+        return ids;
+    }
+
+    private File getFile(int weatherId) {
+        return new File(mDirectory, weatherId + FILE_SUFFIX);
+    }
+
+    static byte[] readFully(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
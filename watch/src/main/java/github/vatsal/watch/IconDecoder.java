@@ -0,0 +1,291 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package github.vatsal.watch;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.wearable.Asset;
+import com.google.android.gms.wearable.PutDataMapRequest;
+import com.google.android.gms.wearable.Wearable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decodes weather icon assets on a background thread, straight to the size they are drawn at,
+ * and hands them to the main thread, which is the one the watch face renders on.
+ * <p>
+ * Icons are cached by weather condition (see {@link IconCache}): a condition seen recently is
+ * shown straight from memory, and one seen before is decoded from disk without the phone having
+ * to send it again.  Which conditions are on disk is published at {@link #ICON_CACHE_PATH}.
+ * <p>
+ * Only the newest request matters: every request bumps a generation, and a decode that is
+ * overtaken by a newer one is dropped at the next step instead of being published.  Bitmaps
+ * that aren't drawn or cached anymore are decoded into again.
+ */
+final class IconDecoder implements IconCache.EvictionListener {
+
+    private static final String LOG_TAG = IconDecoder.class.getSimpleName();
+
+    // path and key should be same as in the app module
+    static final String ICON_CACHE_PATH = "/sunshine-icon-cache";
+    static final String KEY_WEATHER_IDS = "weather-ids";
+
+    static final int NO_WEATHER_ID = -1;
+
+    private static final int MAX_MEMORY_ICONS = 8;
+
+    interface Listener {
+        /**
+         * Called on the main thread with the icon to show.
+         */
+        void onIconDecoded(Bitmap icon);
+    }
+
+    private final GoogleApiClient mGoogleApiClient;
+    private final int mSize;
+    private final Listener mListener;
+    private final IconCache mCache;
+
+    private final HandlerThread mThread;
+    private final Handler mDecodeHandler;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    private final AtomicInteger mGeneration = new AtomicInteger();
+    // A bitmap that isn't drawn or cached anymore and can be decoded into, guarded by this
+    private Bitmap mReusable;
+    // The icon last handed to the listener, only used on the main thread
+    private Bitmap mPublished;
+
+    IconDecoder(GoogleApiClient googleApiClient, File cacheDirectory, int size, Listener listener) {
+        mGoogleApiClient = googleApiClient;
+        mSize = size;
+        mListener = listener;
+        mCache = new IconCache(cacheDirectory, MAX_MEMORY_ICONS, this);
+        mThread = new HandlerThread(LOG_TAG, Process.THREAD_PRIORITY_BACKGROUND);
+        mThread.start();
+        mDecodeHandler = new Handler(mThread.getLooper());
+    }
+
+    /**
+     * Shows the icon of a weather condition, replacing any decode that is still in flight.  Must
+     * be called on the main thread.
+     *
+     * @param weatherId the condition, or NO_WEATHER_ID if the phone didn't say
+     * @param asset the encoded icon, or null if the phone expects the watch to have it already
+     */
+    void decode(final int weatherId, final Asset asset) {
+        final int generation = mGeneration.incrementAndGet();
+        if (weatherId != NO_WEATHER_ID) {
+            Bitmap cached = mCache.get(weatherId);
+            if (cached != null) {
+                publish(cached);
+                return;
+            }
+        }
+        mDecodeHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                decode(weatherId, asset, generation);
+            }
+        });
+    }
+
+    /**
+     * Publishes which conditions have an icon on disk, so the phone knows which icons it
+     * doesn't need to send.
+     */
+    void publishCachedIds() {
+        mDecodeHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                ArrayList<Integer> ids = mCache.getStoredIds();
+                PutDataMapRequest request = PutDataMapRequest.create(ICON_CACHE_PATH);
+                request.getDataMap().putIntegerArrayList(KEY_WEATHER_IDS, ids);
+                Wearable.DataApi.putDataItem(mGoogleApiClient, request.asPutDataRequest());
+                Log.d(LOG_TAG, ids.size() + " cached icons published");
+            }
+        });
+    }
+
+    @Override
+    public void onIconEvicted(Bitmap icon) {
+        if (icon != mPublished) {
+            reuse(icon);
+        }
+    }
+
+    private synchronized void reuse(Bitmap icon) {
+        if (icon != null && icon.isMutable() && !icon.isRecycled()) {
+            mReusable = icon;
+        }
+    }
+
+    private synchronized Bitmap takeReusable() {
+        Bitmap reusable = mReusable;
+        mReusable = null;
+        return reusable;
+    }
+
+    /**
+     * Drops any decode in flight and stops the decode thread.
+     */
+    void release() {
+        mGeneration.incrementAndGet();
+        mThread.quit();
+    }
+
+    private boolean isStale(int generation) {
+        return generation != mGeneration.get();
+    }
+
+    private void publish(Bitmap icon) {
+        Bitmap previous = mPublished;
+        mPublished = icon;
+        mListener.onIconDecoded(icon);
+        // an icon that isn't cached isn't used anymore once it's replaced
+        if (previous != null && previous != icon && !mCache.containsInMemory(previous)) {
+            reuse(previous);
+        }
+    }
+
+    private void decode(final int weatherId, Asset asset, final int generation) {
+        if (isStale(generation)) {
+            return;
+        }
+        long start = SystemClock.elapsedRealtime();
+
+        byte[] data;
+        if (asset != null) {
+            data = fetch(asset, generation);
+            if (data != null && weatherId != NO_WEATHER_ID && mCache.write(weatherId, data)) {
+                publishCachedIds();
+            }
+        } else if (weatherId != NO_WEATHER_ID) {
+            data = mCache.read(weatherId);
+            if (data == null) {
+                // the phone thought we had it, so tell it what we actually have
+                Log.d(LOG_TAG, "No cached icon for " + weatherId);
+                publishCachedIds();
+            }
+        } else {
+            data = null;
+        }
+        if (data == null || isStale(generation)) {
+            return;
+        }
+
+        final Bitmap icon = decodeToSize(data, mSize, takeReusable());
+        if (icon == null) {
+            return;
+        }
+        if (isStale(generation)) {
+            reuse(icon);
+            return;
+        }
+        Log.d(LOG_TAG, "Decoded icon " + weatherId + " in " +
+                (SystemClock.elapsedRealtime() - start) + " ms");
+
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                // a newer decode may have been requested while this one was queued
+                if (isStale(generation)) {
+                    reuse(icon);
+                    return;
+                }
+                if (weatherId != NO_WEATHER_ID) {
+                    mCache.put(weatherId, icon);
+                }
+                publish(icon);
+            }
+        });
+    }
+
+    /**
+     * Reads the asset from the Data Layer.
+     *
+     * @return its bytes, or null if it couldn't be read or a newer decode was requested
+     */
+    private byte[] fetch(Asset asset, int generation) {
+        ConnectionResult result = mGoogleApiClient.blockingConnect(500, TimeUnit.MILLISECONDS);
+        if (!result.isSuccess())
+            return null;
+
+        // convert asset into a file descriptor and block until it's ready
+        InputStream assetInputStream = Wearable.DataApi.getFdForAsset(mGoogleApiClient, asset).await().getInputStream();
+        if (assetInputStream == null || isStale(generation))
+            return null;
+
+        try {
+            return IconCache.readFully(assetInputStream);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error reading icon asset", e);
+            return null;
+        }
+    }
+
+    /**
+     * Decodes an image so that its width comes out at the given size: the decoder first skips
+     * pixels by the largest power of two that keeps the image at least that big, and scales the
+     * rest of the way, so no full size bitmap is ever allocated.
+     *
+     * @param reusable a bitmap to decode into if it is big enough, or null
+     */
+    static Bitmap decodeToSize(byte[] data, int size, Bitmap reusable) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        int width = options.outWidth;
+        int height = options.outHeight;
+        if (width <= 0 || height <= 0) {
+            return null;
+        }
+
+        int sampleSize = 1;
+        while (width / (sampleSize * 2) >= size && height / (sampleSize * 2) >= size) {
+            sampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        options.inScaled = true;
+        options.inDensity = width / sampleSize;
+        options.inTargetDensity = size;
+        options.inMutable = true;
+        options.inBitmap = reusable;
+        try {
+            return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        } catch (IllegalArgumentException e) {
+            // the reusable bitmap is too small for this image
+            options.inBitmap = null;
+            return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        }
+    }
+}
@@ -0,0 +1,273 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package github.vatsal.watch;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+import android.text.format.Time;
+
+/**
+ * Draws the watch face.  Only the time changes from one frame to the next, so everything else
+ * (background, date, weather icon, temperatures and forecast strip) is rendered once into an
+ * offscreen layer, and a frame is that layer plus the time.  The layer is rendered again only
+ * when one of its inputs changes: new weather, a new day, a tap on the forecast strip or the
+ * window insets.  Ambient mode has its own {@link AmbientRenderer}.
+ */
+final class InteractiveRenderer {
+
+    private static final Typeface NORMAL_TYPEFACE =
+            Typeface.create(Typeface.SANS_SERIF, Typeface.NORMAL);
+
+    private final Resources mResources;
+
+    private final Paint mBackgroundPaint;
+    private final Paint mTimePaint;
+    private final Paint mDatePaint;
+    private final Paint mIconPaint;
+    private final Paint mHighTempPaint;
+    private final Paint mLowTempPaint;
+    private final Paint mForecastPaint;
+
+    private final ClockText mClockText;
+    private final ForecastStrip mForecastStrip;
+
+    // Layout, looked up once here and in setRound rather than every frame
+    private final float mYOffset;
+    private float mDateYOffset;
+    private float mTempYOffset;
+    private float mTempMarginRight;
+    private float mForecastYOffset;
+
+    private Bitmap mIcon;
+    private String mHighTemp;
+    private String mLowTemp;
+    private float mHighTempWidth;
+
+    private boolean mLayerCacheEnabled = true;
+    private Bitmap mStaticLayer;
+    private Canvas mStaticLayerCanvas;
+    private boolean mStaticLayerDirty = true;
+
+    InteractiveRenderer(Resources resources) {
+        mResources = resources;
+
+        //Get Y offset
+        mYOffset = resources.getDimension(R.dimen.digital_y_offset);
+
+        //Get paint colors
+        //Background
+        mBackgroundPaint = new Paint();
+        mBackgroundPaint.setColor(resources.getColor(R.color.digital_background));
+        //Time
+        mTimePaint = new Paint();
+        mTimePaint.setColor(resources.getColor(R.color.digital_text));
+        mTimePaint.setTypeface(NORMAL_TYPEFACE);
+        mTimePaint.setAntiAlias(true);
+        //Date
+        mDatePaint = new Paint();
+        mDatePaint.setColor(resources.getColor(R.color.primary));
+        mDatePaint.setTypeface(NORMAL_TYPEFACE);
+        mDatePaint.setAntiAlias(true);
+        //Icon
+        mIconPaint = new Paint();
+        //High Temp
+        mHighTempPaint = new Paint();
+        mHighTempPaint.setColor(resources.getColor(R.color.digital_text));
+        mHighTempPaint.setTypeface(NORMAL_TYPEFACE);
+        mHighTempPaint.setAntiAlias(true);
+        //Low Temp
+        mLowTempPaint = new Paint();
+        mLowTempPaint.setColor(resources.getColor(R.color.primary));
+        mLowTempPaint.setTypeface(NORMAL_TYPEFACE);
+        mLowTempPaint.setAntiAlias(true);
+        //Forecast
+        mForecastPaint = new Paint();
+        mForecastPaint.setColor(resources.getColor(R.color.digital_text));
+        mForecastPaint.setTypeface(NORMAL_TYPEFACE);
+        mForecastPaint.setAntiAlias(true);
+
+        //Time and date text
+        mClockText = new ClockText(mTimePaint, mDatePaint);
+        mForecastStrip = new ForecastStrip(mForecastPaint);
+    }
+
+    /**
+     * Loads the sizes that have alternate values for round watches.
+     */
+    void setRound(boolean isRound) {
+        float timeTextSize = mResources.getDimension(isRound
+                ? R.dimen.digital_time_text_size_round : R.dimen.digital_time_text_size);
+        float dateTextSize = mResources.getDimension(isRound
+                ? R.dimen.digital_date_text_size_round : R.dimen.digital_date_text_size);
+        float tempTextSize = mResources.getDimension(isRound
+                ? R.dimen.digital_temp_text_size_round : R.dimen.digital_temp_text_size);
+
+        mTimePaint.setTextSize(timeTextSize);
+        mDatePaint.setTextSize(dateTextSize);
+        mForecastPaint.setTextSize(dateTextSize);
+        mHighTempPaint.setTextSize(tempTextSize);
+        mLowTempPaint.setTextSize(tempTextSize);
+
+        mDateYOffset = mYOffset
+                + mResources.getDimension(R.dimen.digital_time_text_margin_bottom);
+        mTempYOffset = mDateYOffset
+                + mResources.getDimension(R.dimen.digital_date_text_margin_bottom);
+        mTempMarginRight = mResources.getDimension(R.dimen.digital_temp_text_margin_right);
+        mForecastYOffset = mTempYOffset
+                + mResources.getDimension(R.dimen.digital_forecast_margin_top);
+
+        mClockText.remeasure();
+        mForecastStrip.remeasure();
+        measureTemperatures();
+        mStaticLayerDirty = true;
+    }
+
+    void setWeather(String highTemp, String lowTemp) {
+        mHighTemp = highTemp;
+        mLowTemp = lowTemp;
+        measureTemperatures();
+        mStaticLayerDirty = true;
+    }
+
+    void setIcon(Bitmap icon) {
+        mIcon = icon;
+        mStaticLayerDirty = true;
+    }
+
+    /**
+     * @param payload the coming days, as packed by the phone
+     * @return whether the payload could be read
+     */
+    boolean setForecast(byte[] payload) {
+        if (!mForecastStrip.setForecast(payload)) {
+            return false;
+        }
+        mStaticLayerDirty = true;
+        return true;
+    }
+
+    /**
+     * Moves the forecast strip on to the next day.
+     *
+     * @return whether the face needs to be drawn again
+     */
+    boolean showNextForecastDay() {
+        if (!mForecastStrip.showNextDay()) {
+            return false;
+        }
+        mStaticLayerDirty = true;
+        return true;
+    }
+
+    /**
+     * @return whether a frame drawn now shows everything: the temperatures and the icon
+     */
+    boolean isComplete() {
+        return mHighTemp != null && mLowTemp != null && mIcon != null;
+    }
+
+    /**
+     * Turns the offscreen layer off, so every frame draws everything.  Only used to compare the
+     * two.
+     */
+    void setLayerCacheEnabled(boolean enabled) {
+        mLayerCacheEnabled = enabled;
+        mStaticLayerDirty = true;
+    }
+
+    private void measureTemperatures() {
+        mHighTempWidth = mHighTemp != null ? mHighTempPaint.measureText(mHighTemp) : 0;
+    }
+
+    void draw(Canvas canvas, Rect bounds, Time time) {
+        if ((mClockText.update(time) & ClockText.DATE_CHANGED) != 0) {
+            // the strip starts at tomorrow
+            mForecastStrip.setToday(Time.getJulianDay(time.toMillis(false), time.gmtoff)
+                    - Time.EPOCH_JULIAN_DAY);
+            mStaticLayerDirty = true;
+        }
+
+        if (mLayerCacheEnabled) {
+            int width = bounds.width();
+            int height = bounds.height();
+            if (mStaticLayer == null
+                    || mStaticLayer.getWidth() != width || mStaticLayer.getHeight() != height) {
+                if (mStaticLayer != null) {
+                    mStaticLayer.recycle();
+                }
+                mStaticLayer = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+                mStaticLayerCanvas = new Canvas(mStaticLayer);
+                mStaticLayerDirty = true;
+            }
+            if (mStaticLayerDirty) {
+                drawStaticLayer(mStaticLayerCanvas, bounds);
+                mStaticLayerDirty = false;
+            }
+            canvas.drawBitmap(mStaticLayer, 0, 0, null);
+        } else {
+            drawStaticLayer(canvas, bounds);
+        }
+
+        // Draw HH:MM
+        mClockText.drawTime(canvas, bounds.centerX(), mYOffset);
+    }
+
+    /**
+     * Draws everything but the time.
+     */
+    private void drawStaticLayer(Canvas canvas, Rect bounds) {
+        // Draw the background.
+        canvas.drawRect(0, 0, bounds.width(), bounds.height(), mBackgroundPaint);
+
+        //Get center
+        float centerX = bounds.centerX();
+
+        //Day SHORT-WEEKDAY, SHORT-MONTH DAY YEAR
+        mClockText.drawDate(canvas, centerX, mDateYOffset);
+
+        //Draw Icon and Temperatures
+        if (mHighTemp != null && mLowTemp != null) {
+            //Icon
+            if (mIcon != null)
+                canvas.drawBitmap(mIcon, centerX - mIcon.getWidth() - mIcon.getWidth() / 4,
+                        mTempYOffset - mIcon.getHeight() / 2, mIconPaint);
+            //High temp
+            canvas.drawText(mHighTemp, centerX, mTempYOffset, mHighTempPaint);
+            //Low temp
+            canvas.drawText(mLowTemp, centerX + mHighTempWidth + mTempMarginRight, mTempYOffset,
+                    mLowTempPaint);
+        }
+
+        //Coming days
+        mForecastStrip.draw(canvas, centerX, mForecastYOffset);
+    }
+
+    /**
+     * Frees the offscreen layer.
+     */
+    void release() {
+        if (mStaticLayer != null) {
+            mStaticLayer.recycle();
+            mStaticLayer = null;
+            mStaticLayerCanvas = null;
+        }
+    }
+}
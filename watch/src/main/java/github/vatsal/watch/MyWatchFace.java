@@ -20,20 +20,17 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
-import android.content.res.Resources;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
-import android.graphics.Color;
-import android.graphics.Paint;
 import android.graphics.Rect;
-import android.graphics.Typeface;
-import android.os.AsyncTask;
+import android.net.Uri;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Message;
+import android.os.SystemClock;
 import android.support.wearable.watchface.CanvasWatchFaceService;
 import android.support.wearable.watchface.WatchFaceStyle;
+import android.text.TextUtils;
 import android.text.format.Time;
 import android.util.Log;
 import android.view.SurfaceHolder;
@@ -41,31 +38,33 @@ import android.view.WindowInsets;
 
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.common.api.ResultCallback;
 import com.google.android.gms.wearable.Asset;
 import com.google.android.gms.wearable.DataApi;
 import com.google.android.gms.wearable.DataEvent;
 import com.google.android.gms.wearable.DataEventBuffer;
 import com.google.android.gms.wearable.DataItem;
+import com.google.android.gms.wearable.DataItemBuffer;
 import com.google.android.gms.wearable.DataMap;
 import com.google.android.gms.wearable.DataMapItem;
+import com.google.android.gms.wearable.PutDataRequest;
 import com.google.android.gms.wearable.Wearable;
 
-import java.io.InputStream;
+import java.io.File;
 import java.lang.ref.WeakReference;
-import java.text.DateFormatSymbols;
+import java.util.Arrays;
 import java.util.TimeZone;
 import java.util.concurrent.TimeUnit;
 
 /**
- * Digital watch face with seconds. In ambient mode, the seconds aren't displayed. On devices with
- * low-bit ambient mode, the text is drawn without anti-aliasing in ambient mode.
+ * Digital watch face with seconds. In ambient mode, the seconds aren't displayed, and only the
+ * time and temperatures are, by a separate {@link AmbientRenderer}. On devices with low-bit
+ * ambient mode, the text is drawn without anti-aliasing in ambient mode.
  */
 public class MyWatchFace extends CanvasWatchFaceService {
 
     private static final String LOG_TAG = MyWatchFace.class.getSimpleName();
 
-    private static final Typeface NORMAL_TYPEFACE = Typeface.create(Typeface.SANS_SERIF, Typeface.NORMAL);
-
     /**
      * Update rate in milliseconds for interactive mode. We update once a second since seconds are
      * displayed in interactive mode.
@@ -77,6 +76,9 @@ public class MyWatchFace extends CanvasWatchFaceService {
      */
     private static final int MSG_UPDATE_TIME = 0;
 
+    // path should be same as in the app module
+    private static final String WEATHER_PATH = "/sunshine-temp-update";
+
     @Override
     public Engine onCreateEngine() {
         return new Engine();
@@ -106,20 +108,28 @@ public class MyWatchFace extends CanvasWatchFaceService {
     private class Engine extends CanvasWatchFaceService.Engine implements
             GoogleApiClient.ConnectionCallbacks,
             GoogleApiClient.OnConnectionFailedListener,
-            DataApi.DataListener {
+            DataApi.DataListener,
+            IconDecoder.Listener {
 
         final Handler mUpdateTimeHandler = new EngineHandler(this);
 
         boolean mRegisteredTimeZoneReceiver = false;
 
-        Bitmap mIcon;
+        InteractiveRenderer mRenderer;
+        AmbientRenderer mAmbientRenderer;
 
-        Paint mBackgroundPaint;
-        Paint mTimePaint;
-        Paint mDatePaint;
-        Paint mIconPaint;
-        Paint mHighTempPaint;
-        Paint mLowTempPaint;
+        IconDecoder mIconDecoder;
+
+        // The weather on display, restored from mWeatherStore until the phone sends newer
+        WeatherStore mWeatherStore;
+        String mHighTemp;
+        String mLowTemp;
+        int mWeatherId = IconDecoder.NO_WEATHER_ID;
+        byte[] mForecast;
+
+        // For measuring how long it takes after onCreate until a frame shows the weather
+        long mCreateTime;
+        boolean mFirstCompleteFrameDrawn;
 
         boolean mAmbient;
         Time mTime;
@@ -131,14 +141,6 @@ public class MyWatchFace extends CanvasWatchFaceService {
             }
         };
 
-        float mYOffset;
-
-        String[] mDayNames;
-        String[] mMonthNames;
-
-        String mLowTemp;
-        String mHighTemp;
-
         GoogleApiClient mGoogleApiClient;
 
         /**
@@ -150,56 +152,24 @@ public class MyWatchFace extends CanvasWatchFaceService {
         @Override
         public void onCreate(SurfaceHolder holder) {
             super.onCreate(holder);
+            mCreateTime = SystemClock.elapsedRealtime();
 
             //Watchface Style
             setWatchFaceStyle(new WatchFaceStyle.Builder(MyWatchFace.this)
                     .setCardPeekMode(WatchFaceStyle.PEEK_MODE_VARIABLE)
                     .setBackgroundVisibility(WatchFaceStyle.BACKGROUND_VISIBILITY_INTERRUPTIVE)
                     .setShowSystemUiTime(false)
+                    .setAcceptsTapEvents(true)
                     .build());
-            Resources resources = MyWatchFace.this.getResources();
-
-
-            //Get Y offset
-            mYOffset = resources.getDimension(R.dimen.digital_y_offset);
-
-
-            //Get paint colors
-            //Background
-            mBackgroundPaint = new Paint();
-            mBackgroundPaint.setColor(resources.getColor(R.color.digital_background));
-            //Time
-            mTimePaint = new Paint();
-            mTimePaint.setColor(resources.getColor(R.color.digital_text));
-            mTimePaint.setTypeface(NORMAL_TYPEFACE);
-            mTimePaint.setAntiAlias(true);
-            //Date
-            mDatePaint = new Paint();
-            mDatePaint.setColor(resources.getColor(R.color.primary));
-            mDatePaint.setTypeface(NORMAL_TYPEFACE);
-            mDatePaint.setAntiAlias(true);
-            //Icon
-            mIconPaint = new Paint();
-            //High Temp
-            mHighTempPaint = new Paint();
-            mHighTempPaint.setColor(resources.getColor(R.color.digital_text));
-            mHighTempPaint.setTypeface(NORMAL_TYPEFACE);
-            mHighTempPaint.setAntiAlias(true);
-            //Low Temp
-            mLowTempPaint = new Paint();
-            mLowTempPaint.setColor(resources.getColor(R.color.primary));
-            mLowTempPaint.setTypeface(NORMAL_TYPEFACE);
-            mLowTempPaint.setAntiAlias(true);
 
 
-            //Get current time
-            mTime = new Time();
+            //Paints, text and layout
+            mRenderer = new InteractiveRenderer(MyWatchFace.this.getResources());
+            mAmbientRenderer = new AmbientRenderer(MyWatchFace.this.getResources());
 
 
-            //Get day and month names
-            DateFormatSymbols symbols = new DateFormatSymbols();
-            mDayNames = symbols.getShortWeekdays();
-            mMonthNames = symbols.getShortMonths();
+            //Get current time
+            mTime = new Time();
 
 
             //Connect to Wearable Api
@@ -209,11 +179,28 @@ public class MyWatchFace extends CanvasWatchFaceService {
                     .addApi(Wearable.API)
                     .build();
             mGoogleApiClient.connect();
+
+            //Weather icons are decoded in the background
+            int iconSize = (int) MyWatchFace.this.getResources().getDimension(R.dimen.digital_icon_size);
+            mIconDecoder = new IconDecoder(mGoogleApiClient,
+                    new File(MyWatchFace.this.getFilesDir(), "icons"), iconSize, this);
+
+            //Show the last weather we had right away, the phone may take a while
+            mWeatherStore = new WeatherStore(MyWatchFace.this);
+            String highTemp = mWeatherStore.getHighTemp();
+            String lowTemp = mWeatherStore.getLowTemp();
+            if (highTemp != null && lowTemp != null) {
+                showWeather(highTemp, lowTemp, mWeatherStore.getWeatherId(), null);
+            }
+            showForecast(mWeatherStore.getForecast());
         }
 
         @Override
         public void onDestroy() {
             mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
+            mRenderer.release();
+            mAmbientRenderer.release();
+            mIconDecoder.release();
             super.onDestroy();
         }
 
@@ -258,26 +245,15 @@ public class MyWatchFace extends CanvasWatchFaceService {
             super.onApplyWindowInsets(insets);
 
             // Load resources that have alternate values for round watches.
-            Resources resources = MyWatchFace.this.getResources();
-            boolean isRound = insets.isRound();
-
-            float timeTextSize = resources.getDimension(isRound
-                    ? R.dimen.digital_time_text_size_round : R.dimen.digital_time_text_size);
-            float dateTextSize = resources.getDimension(isRound
-                    ? R.dimen.digital_date_text_size_round : R.dimen.digital_date_text_size);
-            float tempTextSize = resources.getDimension(isRound
-                    ? R.dimen.digital_temp_text_size_round : R.dimen.digital_temp_text_size);
-
-            mTimePaint.setTextSize(timeTextSize);
-            mDatePaint.setTextSize(dateTextSize);
-            mHighTempPaint.setTextSize(tempTextSize);
-            mLowTempPaint.setTextSize(tempTextSize);
+            mRenderer.setRound(insets.isRound());
+            mAmbientRenderer.setRound(insets.isRound());
         }
 
         @Override
         public void onPropertiesChanged(Bundle properties) {
             super.onPropertiesChanged(properties);
             mLowBitAmbient = properties.getBoolean(PROPERTY_LOW_BIT_AMBIENT, false);
+            mAmbientRenderer.setLowBitAmbient(mLowBitAmbient);
         }
 
         @Override
@@ -291,8 +267,8 @@ public class MyWatchFace extends CanvasWatchFaceService {
             super.onAmbientModeChanged(inAmbientMode);
             if (mAmbient != inAmbientMode) {
                 mAmbient = inAmbientMode;
-                if (mLowBitAmbient) {
-                    mTimePaint.setAntiAlias(!inAmbientMode);
+                if (!inAmbientMode) {
+                    mAmbientRenderer.logStats();
                 }
                 invalidate();
             }
@@ -303,52 +279,26 @@ public class MyWatchFace extends CanvasWatchFaceService {
         }
 
         @Override
-        public void onDraw(Canvas canvas, Rect bounds) {
-
-            // Draw the background.
-            if (isInAmbientMode()) {
-                canvas.drawColor(Color.BLACK);
-            } else {
-                canvas.drawRect(0, 0, bounds.width(), bounds.height(), mBackgroundPaint);
+        public void onTapCommand(int tapType, int x, int y, long eventTime) {
+            // a tap anywhere moves the forecast strip on to the next day
+            if (tapType == TAP_TYPE_TAP && mRenderer.showNextForecastDay()) {
+                invalidate();
             }
+        }
 
-            //Get center
-            float centerX = bounds.centerX();
-            float centerY = bounds.centerY();
-
+        @Override
+        public void onDraw(Canvas canvas, Rect bounds) {
             //Set time
             mTime.setToNow();
-
-            // Draw HH:MM
-            String timeText = String.format("%02d:%02d", mTime.hour, mTime.minute);
-            float timeTextSize = mTimePaint.measureText(timeText);
-            canvas.drawText(timeText, centerX - timeTextSize / 2, mYOffset, mTimePaint);
-
-            //Day SHORT-WEEKDAY, SHORT-MONTH DAY YEAR
-            String dateText = String.format(
-                    "%s, %s %d %d",
-                    mDayNames[mTime.weekDay],
-                    mMonthNames[mTime.month],
-                    mTime.monthDay,
-                    mTime.year
-            );
-            float dateTextSize = mDatePaint.measureText(dateText);
-            float dateYOffset = mYOffset + getResources().getDimension(R.dimen.digital_time_text_margin_bottom);
-            canvas.drawText(dateText.toUpperCase(), centerX - dateTextSize / 2, dateYOffset, mDatePaint);
-
-
-            //Draw Icon and Temperatures
-            if (mHighTemp != null && mLowTemp != null) {
-                float tempYOffset = dateYOffset + getResources().getDimension(R.dimen.digital_date_text_margin_bottom);
-                //Icon
-                if (mIcon != null && !mLowBitAmbient)
-                    canvas.drawBitmap(mIcon, centerX - mIcon.getWidth() - mIcon.getWidth() / 4, tempYOffset - mIcon.getHeight() / 2, mIconPaint);
-                //High temp
-                canvas.drawText(mHighTemp, centerX, tempYOffset, mHighTempPaint);
-                //Low temp
-                float highTempSize = mHighTempPaint.measureText(mHighTemp);
-                float highTempRightMargin = getResources().getDimension(R.dimen.digital_temp_text_margin_right);
-                canvas.drawText(mLowTemp, centerX + highTempSize + highTempRightMargin, tempYOffset, mLowTempPaint);
+            if (isInAmbientMode()) {
+                mAmbientRenderer.draw(canvas, bounds, mTime);
+            } else {
+                mRenderer.draw(canvas, bounds, mTime);
+                if (!mFirstCompleteFrameDrawn && mRenderer.isComplete()) {
+                    mFirstCompleteFrameDrawn = true;
+                    Log.d(LOG_TAG, "First complete frame " +
+                            (SystemClock.elapsedRealtime() - mCreateTime) + " ms after onCreate");
+                }
             }
         }
 
@@ -392,6 +342,25 @@ public class MyWatchFace extends CanvasWatchFaceService {
         public void onConnected(Bundle bundle) {
             Log.d(LOG_TAG, "Connected to Google Play...");
             Wearable.DataApi.addListener(mGoogleApiClient, Engine.this);
+            mIconDecoder.publishCachedIds();
+
+            // The weather may have changed while we weren't listening, e.g. when the watch was
+            // off, so catch up with the item the phone has put up.  No host, so any node's.
+            Uri uri = new Uri.Builder().scheme(PutDataRequest.WEAR_URI_SCHEME)
+                    .path(WEATHER_PATH).build();
+            Wearable.DataApi.getDataItems(mGoogleApiClient, uri).setResultCallback(
+                    new ResultCallback<DataItemBuffer>() {
+                        @Override
+                        public void onResult(DataItemBuffer dataItems) {
+                            try {
+                                for (DataItem item : dataItems) {
+                                    applyWeather(DataMapItem.fromDataItem(item).getDataMap());
+                                }
+                            } finally {
+                                dataItems.release();
+                            }
+                        }
+                    });
         }
 
         @Override
@@ -415,50 +384,58 @@ public class MyWatchFace extends CanvasWatchFaceService {
             for (DataEvent event : dataEvents) {
                 if (event.getType() == DataEvent.TYPE_CHANGED) {
                     DataItem item = event.getDataItem();
-                    if (item.getUri().getPath().compareTo("/sunshine-temp-update") == 0) {
-                        DataMap dataMap = DataMapItem.fromDataItem(item).getDataMap();
-                        mHighTemp = dataMap.getString("high-temp");
-                        mLowTemp = dataMap.getString("low-temp");
-                        new GetBitmapForWeatherTask().execute(dataMap.getAsset("icon"));
-
-                        invalidate();
+                    if (item.getUri().getPath().compareTo(WEATHER_PATH) == 0) {
+                        applyWeather(DataMapItem.fromDataItem(item).getDataMap());
                     }
                 }
             }
 
         }
 
-        public Bitmap loadBitmapFromAsset(Asset asset) {
-            if (asset == null)
-                return null;
-
-            ConnectionResult result = mGoogleApiClient.blockingConnect(500, TimeUnit.MILLISECONDS);
-            if (!result.isSuccess())
-                return null;
-
-            // convert asset into a file descriptor and block until it's ready
-            InputStream assetInputStream = Wearable.DataApi.getFdForAsset(mGoogleApiClient, asset).await().getInputStream();
-
-            if (assetInputStream == null)
-                return null;
-
-            // decode the stream into a bitmap
-            return BitmapFactory.decodeStream(assetInputStream);
+        /**
+         * Shows the weather the phone sent, unless it is what we show already, and remembers it.
+         */
+        private void applyWeather(DataMap dataMap) {
+            String highTemp = dataMap.getString("high-temp");
+            String lowTemp = dataMap.getString("low-temp");
+            int weatherId = dataMap.getInt("weather-id", IconDecoder.NO_WEATHER_ID);
+            // the phone leaves the icon out when we have it cached already
+            Asset icon = dataMap.getAsset("icon");
+            byte[] forecast = dataMap.getByteArray("forecast");
+            if (forecast != null && !Arrays.equals(forecast, mForecast) && showForecast(forecast)) {
+                mWeatherStore.saveForecast(forecast);
+                invalidate();
+            }
+            if (weatherId != IconDecoder.NO_WEATHER_ID && weatherId == mWeatherId && icon == null
+                    && TextUtils.equals(highTemp, mHighTemp) && TextUtils.equals(lowTemp, mLowTemp)) {
+                return;
+            }
+            showWeather(highTemp, lowTemp, weatherId, icon);
+            mWeatherStore.save(highTemp, lowTemp, weatherId);
         }
 
-        public class GetBitmapForWeatherTask extends AsyncTask<Asset, Void, Void> {
-
-            @Override
-            protected Void doInBackground(Asset... assets) {
-                Asset asset = assets[0];
-                mIcon = loadBitmapFromAsset(asset);
-
-                int size = Double.valueOf(MyWatchFace.this.getResources().getDimension(R.dimen.digital_icon_size)).intValue();
-                mIcon = Bitmap.createScaledBitmap(mIcon, size, size, false);
-                postInvalidate();
+        private void showWeather(String highTemp, String lowTemp, int weatherId, Asset icon) {
+            mHighTemp = highTemp;
+            mLowTemp = lowTemp;
+            mWeatherId = weatherId;
+            mRenderer.setWeather(highTemp, lowTemp);
+            mAmbientRenderer.setWeather(highTemp, lowTemp);
+            mIconDecoder.decode(weatherId, icon);
+            invalidate();
+        }
 
-                return null;
+        private boolean showForecast(byte[] forecast) {
+            if (forecast == null || !mRenderer.setForecast(forecast)) {
+                return false;
             }
+            mForecast = forecast;
+            return true;
+        }
+
+        @Override
+        public void onIconDecoded(Bitmap icon) {
+            mRenderer.setIcon(icon);
+            invalidate();
         }
 
     }
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2014 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package github.vatsal.watch;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Base64;
+
+/**
+ * The last weather the phone sent, kept on the watch so that the face can show it right away
+ * when it starts, instead of waiting for the phone to connect and send it again.  The icon
+ * itself is in the {@link IconCache}, by weather id.
+ */
+final class WeatherStore {
+
+    private static final String PREFS_NAME = "weather";
+
+    private static final String KEY_HIGH_TEMP = "high-temp";
+    private static final String KEY_LOW_TEMP = "low-temp";
+    private static final String KEY_WEATHER_ID = "weather-id";
+    private static final String KEY_FORECAST = "forecast";
+
+    private final SharedPreferences mPrefs;
+
+    WeatherStore(Context context) {
+        mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    String getHighTemp() {
+        return mPrefs.getString(KEY_HIGH_TEMP, null);
+    }
+
+    String getLowTemp() {
+        return mPrefs.getString(KEY_LOW_TEMP, null);
+    }
+
+    int getWeatherId() {
+        return mPrefs.getInt(KEY_WEATHER_ID, IconDecoder.NO_WEATHER_ID);
+    }
+
+    void save(String highTemp, String lowTemp, int weatherId) {
+        mPrefs.edit()
+                .putString(KEY_HIGH_TEMP, highTemp)
+                .putString(KEY_LOW_TEMP, lowTemp)
+                .putInt(KEY_WEATHER_ID, weatherId)
+                .apply();
+    }
+
+    /**
+     * @return the packed forecast of the coming days, or null if there is none
+     */
+    byte[] getForecast() {
+        String forecast = mPrefs.getString(KEY_FORECAST, null);
+        if (forecast == null) {
+            return null;
+        }
+        try {
+            return Base64.decode(forecast, Base64.NO_WRAP);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    void saveForecast(byte[] forecast) {
+        mPrefs.edit()
+                .putString(KEY_FORECAST, Base64.encodeToString(forecast, Base64.NO_WRAP))
+                .apply();
+    }
+}